@@ -0,0 +1,73 @@
+package ir.websearch.algo.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+
+import ir.websearch.algo.CorpusGenerator;
+import ir.websearch.algo.helper.InputParams;
+
+/**
+ * A synthetic CACM style corpus (documents, queries and a parameter file) in a temporary directory.
+ * The corpus is generated by a {@link CorpusGenerator} from a fixed seed, so benchmarks of the same size run over the same data.
+ */
+public class BenchCorpus {
+
+	private static final long SEED = 42;
+	private static final int VOCABULARY_SIZE = 20000;
+
+	private final Path dir;
+	private final Path docsFile;
+	private final Path queriesFile;
+
+	/**
+	 * @param docs the amount of documents to generate.
+	 * @param queries the amount of queries to generate.
+	 * @throws IOException
+	 */
+	public BenchCorpus(int docs, int queries) throws IOException {
+		this.dir = Files.createTempDirectory("ir-bench");
+		this.docsFile = dir.resolve("docs.txt");
+		this.queriesFile = dir.resolve("queries.txt");
+		new CorpusGenerator.Builder().seed(SEED).documents(docs).queries(queries).vocabulary(VOCABULARY_SIZE).build()
+				.generate(docsFile, queriesFile);
+	}
+
+	/**
+	 * The method writes a parameter file for the corpus and parses it.
+	 * @param retrievalAlgorithm the retrieval algorithm name.
+	 * @param extraParams additional "key=value" parameter lines.
+	 * @return the parsed parameters.
+	 * @throws IOException
+	 */
+	public InputParams params(String retrievalAlgorithm, String... extraParams) throws IOException {
+		File paramsFile = Files.createTempFile(dir, "params", ".txt").toFile();
+		StringBuilder params = new StringBuilder();
+		params.append("queryFile=").append(queriesFile).append('\n');
+		params.append("docsFile=").append(docsFile).append('\n');
+		params.append("outputFile=").append(dir.resolve("output.txt")).append('\n');
+		params.append("retrievalAlgorithm=").append(retrievalAlgorithm).append('\n');
+		for (String extraParam : extraParams) {
+			params.append(extraParam).append('\n');
+		}
+
+		FileUtils.writeStringToFile(paramsFile, params.toString());
+		return new InputParams.Parser(paramsFile.getPath()).parse();
+	}
+
+	public String getDocsFile() {
+		return docsFile.toString();
+	}
+
+	public String getQueriesFile() {
+		return queriesFile.toString();
+	}
+
+	public void delete() throws IOException {
+		FileUtils.deleteDirectory(dir.toFile());
+	}
+
+}
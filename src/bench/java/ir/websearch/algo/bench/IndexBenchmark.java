@@ -0,0 +1,73 @@
+package ir.websearch.algo.bench;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ir.websearch.algo.core.BasicAlgorithm;
+import ir.websearch.algo.core.IndexSchema;
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.InputParams;
+
+/**
+ * Index build time of the collection and the time of calculating the top stop words from the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	private int corpusSize;
+
+	private BenchCorpus corpus;
+	private BasicAlgorithm algorithm;
+	private Directory index;
+
+	@Setup
+	public void setup() throws IOException {
+		corpus = new BenchCorpus(corpusSize, 0);
+		InputParams params = corpus.params("basic");
+		algorithm = new BasicAlgorithm(new DocumentsParser(params.getDocsFileName()), Collections.emptyList(), params);
+		index = new RAMDirectory();
+		algorithm.buildIndex(index, IndexSchema.FULL_PROFILE);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		index.close();
+		corpus.delete();
+	}
+
+	@Benchmark
+	public Directory indexDocuments() throws IOException {
+		Directory newIndex = new RAMDirectory();
+		algorithm.buildIndex(newIndex, IndexSchema.FULL_PROFILE);
+		return newIndex;
+	}
+
+	@Benchmark
+	public Set<String> calcTopStopWords() throws Exception {
+		return BasicAlgorithm.scanTopStopWords(index, 20);
+	}
+
+}
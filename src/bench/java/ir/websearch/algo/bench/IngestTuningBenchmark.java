@@ -0,0 +1,105 @@
+package ir.websearch.algo.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ir.websearch.algo.core.BasicAlgorithm;
+import ir.websearch.algo.core.IndexSchema;
+import ir.websearch.algo.core.IndexStore;
+import ir.websearch.algo.core.SearchSession;
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.InputParams;
+import ir.websearch.algo.query.QueriesParser;
+import ir.websearch.algo.query.Query;
+
+/**
+ * Index build time (including the forced merge, if any) and per query search latency, by the ingestion settings:
+ * the RAM buffer size, the merge policy, the amount of concurrent merge threads (0 for the default of the disk and processors)
+ * and the amount of segments the index is merged down to.
+ * The results are not cached, so every query is searched.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IngestTuningBenchmark {
+
+	@Param({ "10000", "100000" })
+	private int corpusSize;
+
+	@Param({ "16", "64", "256" })
+	private String ramBufferSizeMB;
+
+	@Param({ "tiered", "logByteSize", "none" })
+	private String mergePolicy;
+
+	@Param({ "0", "1", "4" })
+	private int mergeThreads;
+
+	@Param({ "0", "1" })
+	private int forceMergeSegments;
+
+	private BenchCorpus corpus;
+	private BasicAlgorithm algorithm;
+	private SearchSession session;
+	private List<Query> queries;
+	private int nextQuery = 0;
+
+	@Setup
+	public void setup() throws Exception {
+		corpus = new BenchCorpus(corpusSize, 1000);
+		InputParams params = corpus.params("basic", "ramBufferSizeMB=" + ramBufferSizeMB, "mergePolicy=" + mergePolicy,
+				"mergeThreads=" + mergeThreads, "forceMergeSegments=" + forceMergeSegments, "resultCacheSize=0");
+		queries = new ArrayList<>(new QueriesParser(params.getQueryFileName()).parse());
+		algorithm = new BasicAlgorithm(new DocumentsParser(params.getDocsFileName()), queries, params);
+		session = algorithm.openSession();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		session.close();
+		corpus.delete();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Directory buildIndex() throws IOException {
+		Directory index = new RAMDirectory();
+		algorithm.buildIndex(index, IndexSchema.FULL_PROFILE);
+		if (forceMergeSegments > 0) {
+			IndexStore.forceMerge(Collections.singletonList(index), forceMergeSegments);
+		}
+
+		return index;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int[] searchQuery() throws ParseException, IOException {
+		Query query = queries.get(nextQuery);
+		nextQuery = (nextQuery + 1) % queries.size();
+		return session.search(query);
+	}
+
+}
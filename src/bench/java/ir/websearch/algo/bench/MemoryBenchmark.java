@@ -0,0 +1,105 @@
+package ir.websearch.algo.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ir.websearch.algo.core.MemoryAlgorithm;
+import ir.websearch.algo.core.MemoryIndex;
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.InputParams;
+import ir.websearch.algo.query.QueriesParser;
+import ir.websearch.algo.query.Query;
+
+/**
+ * Index build time and per query search latency of the in-memory engine, to compare with 
+ * {@link IndexBenchmark} and {@link SearchBenchmark} of the Lucene index.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MemoryBenchmark {
+
+	private static final int BATCH_SIZE = 256;
+
+	@Param({ "1000", "10000", "100000" })
+	private int corpusSize;
+
+	private BenchCorpus corpus;
+	private MemoryAlgorithm algorithm;
+	private MemoryIndex index;
+	private List<Query> queries;
+	private int nextQuery = 0;
+
+	@Setup
+	public void setup() throws IOException {
+		corpus = new BenchCorpus(corpusSize, 1000);
+		InputParams params = corpus.params("memory");
+		queries = new ArrayList<>(new QueriesParser(params.getQueryFileName()).parse());
+		algorithm = new MemoryAlgorithm(new DocumentsParser(params.getDocsFileName()), queries, params);
+		index = algorithm.buildIndex();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		corpus.delete();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public MemoryIndex buildIndex() {
+		return algorithm.buildIndex();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int[] searchQuery() {
+		Query query = queries.get(nextQuery);
+		nextQuery = (nextQuery + 1) % queries.size();
+		return algorithm.search(index, query);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public int searchQuerySet() {
+		int hits = 0;
+		for (Query query : queries) {
+			hits += algorithm.search(index, query).length;
+		}
+
+		return hits;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public int searchQuerySetShared() {
+		int hits = 0;
+		for (int start = 0; start < queries.size(); start += BATCH_SIZE) {
+			for (int[] docIds : algorithm.search(index, queries.subList(start, Math.min(queries.size(), start + BATCH_SIZE)))) {
+				hits += docIds.length;
+			}
+		}
+
+		return hits;
+	}
+
+}
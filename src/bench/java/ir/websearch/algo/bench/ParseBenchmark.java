@@ -0,0 +1,102 @@
+package ir.websearch.algo.bench;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ir.websearch.algo.doc.Document;
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.query.QueriesParser;
+import ir.websearch.algo.query.Query;
+
+/**
+ * Parsing time of the documents and queries files.
+ * The heap retained by the loaded documents, per document, is reported along with the documents parsing time
+ * (the heapBytesPerDocument secondary metric, see {@link DocumentsHeap}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	private int corpusSize;
+
+	private BenchCorpus corpus;
+
+	@Setup
+	public void setup() throws IOException {
+		corpus = new BenchCorpus(corpusSize, corpusSize / 10);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		corpus.delete();
+	}
+
+	@Benchmark
+	public Collection<Document> parseDocuments(DocumentsHeap heap) {
+		return parse();
+	}
+
+	@Benchmark
+	public Collection<Query> parseQueries() {
+		return new QueriesParser(corpus.getQueriesFile()).parse();
+	}
+
+	private Collection<Document> parse() {
+		return new DocumentsParser(corpus.getDocsFile()).parse();
+	}
+
+	/**
+	 * The heap retained by the parsed documents, per document. Measured before each iteration, outside of the measured time,
+	 * as the used heap (after a few garbage collections) with the documents loaded, less the used heap before.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class DocumentsHeap {
+
+		// Reported through its method rather than as a public field, which JMH would reset after the setup.
+		private long heapBytesPerDocument;
+
+		public long heapBytesPerDocument() {
+			return heapBytesPerDocument;
+		}
+
+		@Setup(Level.Iteration)
+		public void measure(ParseBenchmark benchmark) {
+			long heapBefore = usedHeap();
+			Collection<Document> documents = benchmark.parse();
+			long heapAfter = usedHeap();
+			heapBytesPerDocument = (heapAfter - heapBefore) / documents.size();
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
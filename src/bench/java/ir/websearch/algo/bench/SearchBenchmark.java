@@ -0,0 +1,77 @@
+package ir.websearch.algo.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ir.websearch.algo.core.BasicAlgorithm;
+import ir.websearch.algo.core.ImprovedAlgorithm;
+import ir.websearch.algo.core.SearchSession;
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.InputParams;
+import ir.websearch.algo.query.QueriesParser;
+import ir.websearch.algo.query.Query;
+
+/**
+ * Per query search latency over a warm index, for each of the retrieval algorithms.
+ * Sampled, so the results include the latency distribution (percentiles) and not only its mean.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	private int corpusSize;
+
+	@Param({ "basic", "improved" })
+	private String algorithm;
+
+	private BenchCorpus corpus;
+	private SearchSession session;
+	private List<Query> queries;
+	private int nextQuery = 0;
+
+	@Setup
+	public void setup() throws Exception {
+		corpus = new BenchCorpus(corpusSize, 1000);
+		InputParams params = corpus.params(algorithm);
+		DocumentsParser docsParser = new DocumentsParser(params.getDocsFileName());
+		queries = new ArrayList<>(new QueriesParser(params.getQueryFileName()).parse());
+		BasicAlgorithm searchAlgorithm = "basic".equals(algorithm) ? new BasicAlgorithm(docsParser, queries, params)
+				: new ImprovedAlgorithm(docsParser, queries, params);
+		session = searchAlgorithm.openSession();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		session.close();
+		corpus.delete();
+	}
+
+	@Benchmark
+	public int[] searchQuery() throws ParseException, IOException {
+		Query query = queries.get(nextQuery);
+		nextQuery = (nextQuery + 1) % queries.size();
+		return session.search(query);
+	}
+
+}
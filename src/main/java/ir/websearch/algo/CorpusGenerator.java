@@ -0,0 +1,399 @@
+package ir.websearch.algo;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a synthetic collection in the CACM style format of the documents and queries files, for testing at scale.
+ * <p>
+ * The words are drawn from a Zipf distribution over a vocabulary of the given size: the most frequent ranks are common
+ * English function words (most of them analyzer stop words), the rest are made up of syllables, shorter for more frequent ranks.
+ * Each document has a title and an abstract of sentences, of lengths drawn uniformly from the given ranges.
+ * Each query targets a random document: every query term is drawn from the words of the target document at the given
+ * overlap rate, and from the vocabulary otherwise.
+ * <p>
+ * The collection is reproducible: each document and query is generated from a random generator of its own,
+ * seeded by the collection seed and its ID. Hence the documents are streamed to the file one at a time, whatever the collection size,
+ * and a query regenerates the words of its target document rather than keeping the documents.
+ * <p>
+ * Usage: {@code CorpusGenerator <documents file> <queries file> [key=value ...]}, where the keys are:
+ * seed, documents, queries, vocabulary, zipfExponent, titleLength, abstractLength, sentenceLength, queryLength (ranges as "min-max")
+ * and queryOverlap.
+ */
+public class CorpusGenerator {
+
+	private static final String[] FUNCTION_WORDS = { "the", "of", "and", "a", "in", "to", "is", "for", "that", "with",
+			"on", "by", "are", "as", "an", "be", "this", "which", "from", "or" };
+	/**
+	 * The syllables of the made up words. No syllable is a prefix of another, so the words of different ranks differ.
+	 */
+	private static final String[] SYLLABLES = { "ka", "lo", "mi", "tra", "pen", "dor", "su", "vel", "qui", "zan", "ber", "tol", "ex", "ra" };
+	private static final long QUERY_SEED_SALT = 0x5DEECE66DL;
+
+	private final long seed;
+	private final int documents;
+	private final int queries;
+	private final double[] cumulativeWeights;
+	private final int minTitleLength;
+	private final int maxTitleLength;
+	private final int minAbstractLength;
+	private final int maxAbstractLength;
+	private final int minSentenceLength;
+	private final int maxSentenceLength;
+	private final int minQueryLength;
+	private final int maxQueryLength;
+	private final double queryOverlap;
+	private final char[] wordBuffer = new char[64];
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Must include the documents and queries file names, followed by optional key=value settings");
+			return;
+		}
+
+		Builder builder = new Builder();
+		for (int i = 2; i < args.length; i++) {
+			int separatorIdx = args[i].indexOf('=');
+			if (separatorIdx <= 0 || !builder.set(args[i].substring(0, separatorIdx).trim(), args[i].substring(separatorIdx + 1).trim())) {
+				System.out.println("Faild to parse setting: " + args[i] + ".");
+				return;
+			}
+		}
+
+		try {
+			CorpusGenerator generator = builder.build();
+			long start = System.nanoTime();
+			generator.generate(Paths.get(args[0]), Paths.get(args[1]));
+			System.out.println(String.format("Generated %d documents (%d MB) and %d queries in %d ms.", generator.documents,
+					Files.size(Paths.get(args[0])) / (1024 * 1024), generator.queries, (System.nanoTime() - start) / 1000000));
+		} catch (IllegalArgumentException e) {
+			System.out.println("Faild to generate the collection: " + e.getMessage());
+		} catch (IOException e) {
+			System.out.println("Faild to write the collection files.");
+		}
+	}
+
+	/**
+	 * The method writes the documents file and the queries file.
+	 * @param docsFile the documents file path.
+	 * @param queriesFile the queries file path.
+	 * @throws IOException
+	 */
+	public void generate(Path docsFile, Path queriesFile) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(docsFile)) {
+			writeDocuments(writer);
+		}
+
+		try (Writer writer = Files.newBufferedWriter(queriesFile)) {
+			writeQueries(writer);
+		}
+	}
+
+	/**
+	 * The method writes the documents, by ID order starting at 1.
+	 * @param out the destination of the documents.
+	 * @throws IOException
+	 */
+	public void writeDocuments(Writer out) throws IOException {
+		int[] ranks = new int[maxTitleLength + maxAbstractLength];
+		for (int id = 1; id <= documents; id++) {
+			SplittableRandom random = new SplittableRandom(mix(seed, id));
+			int titleLength = between(random, minTitleLength, maxTitleLength);
+			int length = titleLength + between(random, minAbstractLength, maxAbstractLength);
+			fillRanks(random, ranks, length);
+			out.write(".I ");
+			out.write(Integer.toString(id));
+			out.write("\n.W\n");
+			writeWords(out, ranks, 0, titleLength);
+			out.write(".\n");
+			// The abstract is made of sentences, drawn after the words so the words do not depend on them.
+			for (int start = titleLength; start < length;) {
+				int end = Math.min(length, start + between(random, minSentenceLength, maxSentenceLength));
+				if (start > titleLength) {
+					out.write(' ');
+				}
+
+				writeWords(out, ranks, start, end);
+				out.write('.');
+				start = end;
+			}
+
+			out.write('\n');
+		}
+	}
+
+	/**
+	 * The method writes the queries, by ID order starting at 1.
+	 * @param out the destination of the queries.
+	 * @throws IOException
+	 */
+	public void writeQueries(Writer out) throws IOException {
+		int[] targetRanks = new int[maxTitleLength + maxAbstractLength];
+		int[] ranks = new int[maxQueryLength];
+		for (int id = 1; id <= queries; id++) {
+			SplittableRandom random = new SplittableRandom(mix(seed ^ QUERY_SEED_SALT, id));
+			int targetLength = (documents == 0) ? 0 : documentRanks(1 + random.nextInt(documents), targetRanks);
+			int length = between(random, minQueryLength, maxQueryLength);
+			for (int i = 0; i < length; i++) {
+				boolean overlap = targetLength > 0 && random.nextDouble() < queryOverlap;
+				ranks[i] = overlap ? targetRanks[random.nextInt(targetLength)] : drawRank(random);
+			}
+
+			out.write(".I ");
+			out.write(Integer.toString(id));
+			out.write("\n.W\n");
+			writeWords(out, ranks, 0, length);
+			out.write("?\n");
+		}
+	}
+
+	/**
+	 * The method regenerates the word ranks of a document (its title followed by its abstract).
+	 * @return the amount of words of the document.
+	 */
+	private int documentRanks(int id, int[] ranks) {
+		SplittableRandom random = new SplittableRandom(mix(seed, id));
+		int length = between(random, minTitleLength, maxTitleLength) + between(random, minAbstractLength, maxAbstractLength);
+		fillRanks(random, ranks, length);
+		return length;
+	}
+
+	private void fillRanks(SplittableRandom random, int[] ranks, int length) {
+		for (int i = 0; i < length; i++) {
+			ranks[i] = drawRank(random);
+		}
+	}
+
+	/**
+	 * @return a vocabulary rank drawn from the Zipf distribution, by a binary search of the cumulative weights.
+	 */
+	private int drawRank(SplittableRandom random) {
+		double weight = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+		int idx = Arrays.binarySearch(cumulativeWeights, weight);
+		return Math.min((idx >= 0) ? idx + 1 : -idx - 1, cumulativeWeights.length - 1);
+	}
+
+	private void writeWords(Writer out, int[] ranks, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			if (i > start) {
+				out.write(' ');
+			}
+
+			writeWord(out, ranks[i]);
+		}
+	}
+
+	/**
+	 * The method writes the word of a vocabulary rank: a function word, or the syllables of the rank in bijective base
+	 * of the amount of syllables, so every made up word is distinct.
+	 */
+	private void writeWord(Writer out, int rank) throws IOException {
+		if (rank < FUNCTION_WORDS.length) {
+			out.write(FUNCTION_WORDS[rank]);
+			return;
+		}
+
+		// The syllables are found from the last one, and placed from the end of the buffer.
+		int idx = wordBuffer.length;
+		for (int n = rank - FUNCTION_WORDS.length + 1; n > 0; n = (n - 1) / SYLLABLES.length) {
+			String syllable = SYLLABLES[(n - 1) % SYLLABLES.length];
+			idx -= syllable.length();
+			syllable.getChars(0, syllable.length(), wordBuffer, idx);
+		}
+
+		out.write(wordBuffer, idx, wordBuffer.length - idx);
+	}
+
+	private static int between(SplittableRandom random, int min, int max) {
+		return (min == max) ? min : min + random.nextInt(max - min + 1);
+	}
+
+	/**
+	 * @return a seed of a document or query, mixing the collection seed and the ID (the finalization step of MurmurHash3).
+	 */
+	private static long mix(long seed, int id) {
+		long hash = seed + id * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9a34ca1ddb4L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	public static class Builder {
+		private long seed = 42;
+		private int documents = 10000;
+		private int queries = 1000;
+		private int vocabulary = 50000;
+		private double zipfExponent = 1.0;
+		private int[] titleLength = { 3, 10 };
+		private int[] abstractLength = { 20, 140 };
+		private int[] sentenceLength = { 8, 24 };
+		private int[] queryLength = { 3, 17 };
+		private double queryOverlap = 0.5;
+
+		public Builder seed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		public Builder documents(int documents) {
+			this.documents = documents;
+			return this;
+		}
+
+		public Builder queries(int queries) {
+			this.queries = queries;
+			return this;
+		}
+
+		/**
+		 * @param vocabulary the amount of distinct words.
+		 */
+		public Builder vocabulary(int vocabulary) {
+			this.vocabulary = vocabulary;
+			return this;
+		}
+
+		/**
+		 * @param zipfExponent the exponent of the Zipf distribution: the frequency of the word of rank r is proportional to 1/r^s.
+		 */
+		public Builder zipfExponent(double zipfExponent) {
+			this.zipfExponent = zipfExponent;
+			return this;
+		}
+
+		public Builder titleLength(int min, int max) {
+			this.titleLength = new int[] { min, max };
+			return this;
+		}
+
+		public Builder abstractLength(int min, int max) {
+			this.abstractLength = new int[] { min, max };
+			return this;
+		}
+
+		public Builder sentenceLength(int min, int max) {
+			this.sentenceLength = new int[] { min, max };
+			return this;
+		}
+
+		public Builder queryLength(int min, int max) {
+			this.queryLength = new int[] { min, max };
+			return this;
+		}
+
+		/**
+		 * @param queryOverlap the rate of the query terms drawn from the target document of the query, between 0 and 1.
+		 */
+		public Builder queryOverlap(double queryOverlap) {
+			this.queryOverlap = queryOverlap;
+			return this;
+		}
+
+		/**
+		 * The method sets a setting by its name (see {@link CorpusGenerator}).
+		 * @param key the setting name.
+		 * @param value the setting value; a range is given as "min-max".
+		 * @return false if the setting is unknown or its value could not be parsed.
+		 */
+		public boolean set(String key, String value) {
+			try {
+				switch (key) {
+				case "seed":
+					seed(Long.parseLong(value));
+					break;
+				case "documents":
+					documents(Integer.parseInt(value));
+					break;
+				case "queries":
+					queries(Integer.parseInt(value));
+					break;
+				case "vocabulary":
+					vocabulary(Integer.parseInt(value));
+					break;
+				case "zipfExponent":
+					zipfExponent(Double.parseDouble(value));
+					break;
+				case "titleLength":
+					titleLength = parseRange(value);
+					break;
+				case "abstractLength":
+					abstractLength = parseRange(value);
+					break;
+				case "sentenceLength":
+					sentenceLength = parseRange(value);
+					break;
+				case "queryLength":
+					queryLength = parseRange(value);
+					break;
+				case "queryOverlap":
+					queryOverlap(Double.parseDouble(value));
+					break;
+				default:
+					return false;
+				}
+			} catch (NumberFormatException e) {
+				return false;
+			}
+
+			return true;
+		}
+
+		private static int[] parseRange(String value) {
+			int separatorIdx = value.indexOf('-');
+			if (separatorIdx < 0) {
+				int length = Integer.parseInt(value);
+				return new int[] { length, length };
+			}
+
+			return new int[] { Integer.parseInt(value.substring(0, separatorIdx).trim()), Integer.parseInt(value.substring(separatorIdx + 1).trim()) };
+		}
+
+		/**
+		 * @return the generator.
+		 * @throws IllegalArgumentException if any of the settings is out of range.
+		 */
+		public CorpusGenerator build() {
+			if (documents < 0 || queries < 0 || vocabulary < 1 || zipfExponent < 0 || queryOverlap < 0 || queryOverlap > 1
+					|| !isValid(titleLength, 1) || !isValid(abstractLength, 0) || !isValid(sentenceLength, 1) || !isValid(queryLength, 1)) {
+				throw new IllegalArgumentException("A setting is out of range.");
+			}
+
+			return new CorpusGenerator(this);
+		}
+
+		private static boolean isValid(int[] range, int min) {
+			return range[0] >= min && range[0] <= range[1];
+		}
+	}
+
+	private CorpusGenerator(Builder builder) {
+		this.seed = builder.seed;
+		this.documents = builder.documents;
+		this.queries = builder.queries;
+		this.cumulativeWeights = new double[builder.vocabulary];
+		double sum = 0;
+		for (int rank = 0; rank < cumulativeWeights.length; rank++) {
+			sum += 1 / Math.pow(rank + 1, builder.zipfExponent);
+			cumulativeWeights[rank] = sum;
+		}
+
+		this.minTitleLength = builder.titleLength[0];
+		this.maxTitleLength = builder.titleLength[1];
+		this.minAbstractLength = builder.abstractLength[0];
+		this.maxAbstractLength = builder.abstractLength[1];
+		this.minSentenceLength = builder.sentenceLength[0];
+		this.maxSentenceLength = builder.sentenceLength[1];
+		this.minQueryLength = builder.queryLength[0];
+		this.maxQueryLength = builder.queryLength[1];
+		this.queryOverlap = builder.queryOverlap;
+	}
+
+}
@@ -0,0 +1,63 @@
+package ir.websearch.algo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+import ir.websearch.algo.core.BasicAlgorithm;
+import ir.websearch.algo.core.ISearchAlgorithm;
+import ir.websearch.algo.core.IndexSchema;
+import ir.websearch.algo.core.IndexStore;
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.InputParams;
+import ir.websearch.algo.helper.InputParams.Parser;
+
+/**
+ * Compares the index size and build time of the schema profiles, for the documents and the retrieval algorithm 
+ * of the given parameter file. The indexes are built in memory, hence the given index directory is left untouched.
+ */
+public class SchemaProfileReport {
+
+	private static final List<String> PROFILES = Arrays.asList(IndexSchema.FULL_PROFILE, IndexSchema.LEAN_PROFILE);
+
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.out.println("Must include the parameter file name");
+			return;
+		}
+
+		String fileName = args[0];
+		InputParams inputParams = new Parser(fileName).parse();
+		if (inputParams == null) {
+			System.out.println("Faild to load parameter file name: " + fileName + ".");
+			return;
+		}
+
+		DocumentsParser docsParser = new DocumentsParser(inputParams.getDocsFileName());
+		ISearchAlgorithm algorithm = SearchRanker.createAlgorithm(docsParser, Collections.emptyList(), inputParams);
+		if (!(algorithm instanceof BasicAlgorithm)) {
+			System.out.println("The retrieval algorithm does not build a Lucene index: " + inputParams.getRetrievalAlgorithm() + ".");
+			return;
+		}
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-8s %14s %14s%n", "profile", "size (KB)", "build (ms)"));
+		for (String profile : PROFILES) {
+			try (Directory index = new RAMDirectory()) {
+				long start = System.nanoTime();
+				((BasicAlgorithm) algorithm).buildIndex(index, profile);
+				long buildMillis = (System.nanoTime() - start) / 1000000;
+				report.append(String.format("%-8s %14d %14d%n", profile, IndexStore.sizeOf(index) / 1024, buildMillis));
+			} catch (Exception e) {
+				System.out.println("Faild to build the index of profile: " + profile + ".");
+				return;
+			}
+		}
+
+		System.out.print(report);
+	}
+
+}
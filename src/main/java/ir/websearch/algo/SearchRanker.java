@@ -1,16 +1,23 @@
 package ir.websearch.algo;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
-import java.util.List;
+import java.util.Collections;
 
 import ir.websearch.algo.core.BasicAlgorithm;
+import ir.websearch.algo.core.DistributedAlgorithm;
 import ir.websearch.algo.core.ISearchAlgorithm;
 import ir.websearch.algo.core.ImprovedAlgorithm;
-import ir.websearch.algo.doc.Document;
+import ir.websearch.algo.core.MemoryAlgorithm;
+import ir.websearch.algo.core.ResultWriter;
+import ir.websearch.algo.core.SearchMetrics;
+import ir.websearch.algo.core.SearchMetrics.Phase;
+import ir.websearch.algo.core.SearchSession;
+import ir.websearch.algo.core.ShardWorker;
 import ir.websearch.algo.doc.DocumentsParser;
 import ir.websearch.algo.helper.InputParams;
 import ir.websearch.algo.helper.InputParams.Parser;
@@ -21,6 +28,9 @@ public class SearchRanker {
 	
 	private static final String BASIC_ALGORITHM = "basic";
 	private static final String IMPROVED_ALGORITHM = "improved";
+	private static final String MEMORY_ALGORITHM = "memory";
+	private static final String METRICS_SUMMARY_SUFFIX = ".metrics.json";
+	private static final String METRICS_QUERIES_SUFFIX = ".queries.csv";
 
 	public static void main(String[] args) {
 		if (args.length != 1) {
@@ -37,46 +47,176 @@ public class SearchRanker {
 			return;
 		}
 
+		if (inputParams.isSharedScan() && (!MEMORY_ALGORITHM.equals(inputParams.getRetrievalAlgorithm()) || !inputParams.getWorkers().isEmpty())) {
+			// Only the in memory index scans the postings of a term once for a batch of queries.
+			System.out.println("The retrieval algorithm does not support the shared scan: " + inputParams.getRetrievalAlgorithm() + ".");
+			return;
+		}
+
+		// Documents are streamed from the file while indexing, only make sure the file can be read.
+		// A coordinator of shard workers does not read the documents.
 		DocumentsParser docsParser = new DocumentsParser(inputParams.getDocsFileName());
-		Collection<Document> docs = docsParser.parse();
-		if (docs == null) {
+		if (inputParams.getWorkers().isEmpty() && !docsParser.canRead()) {
 			System.out.println("Faild to load document file name: " + inputParams.getDocsFileName() + ".");
 			return;
 		}
 
+		if (inputParams.getServerPort() > 0) {
+			// Serve queries over a warm index, instead of running the query file.
+			startServer(docsParser, inputParams);
+			return;
+		}
+		
+		if (inputParams.getWorkerPort() > 0) {
+			// Serve the slice of the collection to a coordinator, instead of running the query file.
+			startWorker(docsParser, inputParams);
+			return;
+		}
+
+		long queriesParseStart = System.nanoTime();
 		QueriesParser queriesParser = new QueriesParser(inputParams.getQueryFileName());
 		Collection<Query> queries = queriesParser.parse();
+		long queriesParseNanos = System.nanoTime() - queriesParseStart;
 		if (queries == null) {
 			System.out.println("Faild to load queries file name: " + inputParams.getQueryFileName() + ".");
 			return;
 		}
 
 		// Generate the a retrieval algorithm of choice and perform search.
-		ISearchAlgorithm algorithm = null; 
-		switch (inputParams.getRetrievalAlgorithm()) {
-		case BASIC_ALGORITHM:
-			algorithm = new BasicAlgorithm(docs, queries);
-			break;
-		case IMPROVED_ALGORITHM:
-			algorithm = new ImprovedAlgorithm(docs, queries);
-			break;
+		ISearchAlgorithm algorithm = inputParams.getWorkers().isEmpty() 
+				? createAlgorithm(docsParser, queries, inputParams) : new DistributedAlgorithm(queries, inputParams);
+		SearchMetrics metrics = algorithm.getMetrics();
+		metrics.addTime(Phase.PARSE, queriesParseNanos);
+		// Output retrieval experiment results, query by query.
+		Path outputPath = Paths.get(inputParams.getOutputFileName());
+		try (ResultWriter resultWriter = new ResultWriter(Files.newBufferedWriter(outputPath))) {
+			if (!algorithm.search(resultWriter)) {
+				System.out.println("Faild to search the collection.");
+				return;
+			}
+		} catch (IOException e) {
+			System.out.println("Faild to write output file name: " + inputParams.getOutputFileName() + ".");
+			return;
+		}
+		
+		// Output the run metrics next to the results.
+		try {
+			metrics.writeSummary(Paths.get(inputParams.getOutputFileName() + METRICS_SUMMARY_SUFFIX));
+			metrics.writeQueries(Paths.get(inputParams.getOutputFileName() + METRICS_QUERIES_SUFFIX));
+		} catch (IOException e) {
+			System.out.println("Faild to write the metrics of output file name: " + inputParams.getOutputFileName() + ".");
+		}
+	}
+
+	/**
+	 * The method prepares the collection for searching once, and starts a {@link SearchServer} answering queries 
+	 * until the process is stopped.
+	 * @param docsParser the document collection.
+	 * @param inputParams the run parameters.
+	 */
+	private static void startServer(DocumentsParser docsParser, InputParams inputParams) {
+		ISearchAlgorithm algorithm = createAlgorithm(docsParser, Collections.emptyList(), inputParams);
+		if (!(algorithm instanceof BasicAlgorithm)) {
+			System.out.println("The retrieval algorithm does not support the search service: " + inputParams.getRetrievalAlgorithm() + ".");
+			return;
+		}
+
+		BasicAlgorithm basicAlgorithm = (BasicAlgorithm) algorithm;
+		String readOnlyReason = basicAlgorithm.getReadOnlyReason();
+		if (readOnlyReason != null) {
+			System.out.println("The search service is read only: " + readOnlyReason);
 		}
 		
-		List<String> outputOfAllQueries = algorithm.search();
-		if (outputOfAllQueries == null) {
-			System.out.println("Faild to search the collection.");
+		SearchSession session = null;
+		try {
+			session = basicAlgorithm.openSession(readOnlyReason == null);
+		} catch (Exception e) {
+			System.out.println("Faild to prepare the collection for the search service: " + e.getMessage());
 			return;
 		}
 		
-		// Output retrieval experiment results.
-		Path outputPath = Paths.get(inputParams.getOutputFileName());
 		try {
-			Files.write(outputPath, outputOfAllQueries);
+			SearchServer server = new SearchServer(session, inputParams.getServerPort(), inputParams.getSearchThreads());
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					server.close();
+				} catch (IOException e) {
+					System.out.println("Faild to close the search service.");
+				}
+			}));
+			
+			InetSocketAddress address = server.getAddress();
+			System.out.println("Serving queries at: http://" + address.getHostString() + ":" + address.getPort() + SearchServer.SEARCH_PATH + ".");
 		} catch (IOException e) {
-			System.out.println("Faild to write output file name: " + inputParams.getOutputFileName() + ".");
+			System.out.println("Faild to start the search service on port: " + inputParams.getServerPort() + ".");
+			try {
+				session.close();
+			} catch (IOException closeException) {
+			}
 		}
 	}
 
-	
+	/**
+	 * The method prepares the index of the slice of the collection once, and starts a {@link ShardWorker} answering 
+	 * the requests of a coordinator until the process is stopped.
+	 * @param docsParser the document collection.
+	 * @param inputParams the run parameters.
+	 */
+	private static void startWorker(DocumentsParser docsParser, InputParams inputParams) {
+		ISearchAlgorithm algorithm = createAlgorithm(docsParser, Collections.emptyList(), inputParams);
+		if (!(algorithm instanceof BasicAlgorithm)) {
+			System.out.println("The retrieval algorithm does not support the shard worker: " + inputParams.getRetrievalAlgorithm() + ".");
+			return;
+		}
+
+		SearchSession session = null;
+		try {
+			session = ((BasicAlgorithm) algorithm).openSession();
+			ShardWorker worker = new ShardWorker(session, inputParams.getWorkerPort());
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					worker.close();
+				} catch (IOException e) {
+					System.out.println("Faild to close the shard worker.");
+				}
+			}));
+			
+			InetSocketAddress address = worker.getAddress();
+			System.out.println("Serving slice " + inputParams.getSlice() + "/" + inputParams.getSlices() + " at: " 
+					+ address.getHostString() + ":" + address.getPort() + ".");
+		} catch (Exception e) {
+			System.out.println("Faild to start the shard worker on port: " + inputParams.getWorkerPort() + ".");
+			if (session != null) {
+				try {
+					session.close();
+				} catch (IOException closeException) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * The method generates the retrieval algorithm chosen by the input parameters.
+	 * @param docsParser the document collection.
+	 * @param queries the query set.
+	 * @param inputParams the run parameters.
+	 * @return the retrieval algorithm; null if the algorithm is unknown.
+	 */
+	static ISearchAlgorithm createAlgorithm(DocumentsParser docsParser, Collection<Query> queries, InputParams inputParams) {
+		ISearchAlgorithm algorithm = null; 
+		switch (inputParams.getRetrievalAlgorithm()) {
+		case BASIC_ALGORITHM:
+			algorithm = new BasicAlgorithm(docsParser, queries, inputParams);
+			break;
+		case IMPROVED_ALGORITHM:
+			algorithm = new ImprovedAlgorithm(docsParser, queries, inputParams);
+			break;
+		case MEMORY_ALGORITHM:
+			algorithm = new MemoryAlgorithm(docsParser, queries, inputParams);
+			break;
+		}
+		
+		return algorithm;
+	}
 
 }
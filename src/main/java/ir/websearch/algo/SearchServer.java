@@ -0,0 +1,204 @@
+package ir.websearch.algo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ir.websearch.algo.core.IndexUpdater;
+import ir.websearch.algo.core.ResultWriter;
+import ir.websearch.algo.core.SearchResult;
+import ir.websearch.algo.core.SearchSession;
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.RecordReader;
+import ir.websearch.algo.query.QueriesParser;
+import ir.websearch.algo.query.Query;
+
+/**
+ * A long running search service over a warm {@link SearchSession}: the index, searcher and query analyzer are
+ * prepared once, then queries are answered over a local HTTP endpoint until the process is stopped.
+ * <p>
+ * {@code GET /search?q=<query text>&id=<query ID>&k=<amount of documents>} (or {@code POST /search?id=<query ID>&k=<amount of documents>}
+ * with the query text as the body) returns the results as plain text lines, in the same format as the batch output file (e.g. "q1,doc42,1").
+ * The query text is normalized the same way as the query file records. The query ID is optional (0 by default), and so is
+ * the amount of documents (the amount of the run by default).
+ * <p>
+ * When the session is updatable, {@code POST /documents} adds the documents of the body (in the documents file format),
+ * replacing indexed documents of the same IDs, and {@code DELETE /documents?id=<document ID>} deletes a document.
+ * The updates become searchable within the refresh delay of the session. A read only session answers them by 405.
+ */
+public class SearchServer implements Closeable {
+
+	public static final String SEARCH_PATH = "/search";
+	public static final String DOCUMENTS_PATH = "/documents";
+
+	private static final String QUERY_TEXT_PARAM = "q";
+	private static final String QUERY_ID_PARAM = "id";
+	private static final String QUERY_K_PARAM = "k";
+	private static final String DOC_ID_PARAM = "id";
+	private static final int DEFAULT_QUERY_ID = 0;
+	private static final int STOP_DELAY_SECONDS = 1;
+
+	private final SearchSession session;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * The method starts the service. The service listens on the loopback address only.
+	 * @param session the search session to answer queries from. Owned by the service from now on.
+	 * @param port the local port to listen on.
+	 * @param threads the amount of threads answering queries concurrently.
+	 * @throws IOException
+	 */
+	public SearchServer(SearchSession session, int port, int threads) throws IOException {
+		this.session = session;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = Executors.newFixedThreadPool(threads);
+		server.createContext(SEARCH_PATH, this::handleSearch);
+		server.createContext(DOCUMENTS_PATH, this::handleDocuments);
+		
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * @return the address the service listens on.
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.stop(STOP_DELAY_SECONDS);
+		executor.shutdownNow();
+		session.close();
+	}
+
+	private void handleSearch(HttpExchange exchange) throws IOException {
+		try {
+			Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+			String text = "POST".equals(exchange.getRequestMethod()) ? readBody(exchange.getRequestBody()) : params.get(QUERY_TEXT_PARAM);
+			if (text == null) {
+				respond(exchange, 400, "Missing query text parameter: " + QUERY_TEXT_PARAM + ".");
+				return;
+			}
+
+			String queryId = params.get(QUERY_ID_PARAM);
+			String k = params.get(QUERY_K_PARAM);
+			Query query = QueriesParser.createQuery(queryId == null ? DEFAULT_QUERY_ID : Integer.parseInt(queryId), 
+					k == null ? null : Integer.valueOf(k), text);
+			SearchResult result = session.search(query, SearchSession.NO_BUDGET);
+			StringWriter results = new StringWriter();
+			try (ResultWriter resultWriter = new ResultWriter(results)) {
+				resultWriter.write(query.getId(), result.getDocIds(), result.getDocIds().length, result.isPartial());
+			}
+
+			respond(exchange, 200, results.toString());
+		} catch (IllegalArgumentException | ParseException e) {
+			respond(exchange, 400, "Faild to parse the query: " + e.getMessage());
+		} catch (Exception e) {
+			respond(exchange, 500, "Faild to search the query.");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleDocuments(HttpExchange exchange) throws IOException {
+		try {
+			IndexUpdater updater = session.getUpdater();
+			if (updater == null) {
+				respond(exchange, 405, "The index is read only.");
+				return;
+			}
+			
+			switch (exchange.getRequestMethod()) {
+			case "POST":
+				int updated = 0;
+				try (RecordReader records = DocumentsParser.records(new StringReader(readBody(exchange.getRequestBody())))) {
+					while (records.hasNext()) {
+						updater.updateDocument(DocumentsParser.parseDocument(records.next()));
+						updated++;
+					}
+				}
+				
+				respond(exchange, 200, "Updated " + updated + " documents.");
+				break;
+			case "DELETE":
+				String docId = parseParams(exchange.getRequestURI().getRawQuery()).get(DOC_ID_PARAM);
+				if (docId == null) {
+					respond(exchange, 400, "Missing document ID parameter: " + DOC_ID_PARAM + ".");
+					return;
+				}
+				
+				updater.deleteDocument(Integer.parseInt(docId));
+				respond(exchange, 200, "Deleted document " + docId + ".");
+				break;
+			default:
+				respond(exchange, 405, "Unsupported method: " + exchange.getRequestMethod() + ".");
+			}
+		} catch (RuntimeException e) {
+			// A malformed document record or ID.
+			respond(exchange, 400, "Faild to parse the documents.");
+		} catch (Exception e) {
+			respond(exchange, 500, "Faild to update the documents.");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static Map<String, String> parseParams(String rawQuery) throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<>();
+		if (rawQuery == null) {
+			return params;
+		}
+
+		for (String param : rawQuery.split("&")) {
+			int separatorIdx = param.indexOf('=');
+			if (separatorIdx > 0) {
+				params.putIfAbsent(URLDecoder.decode(param.substring(0, separatorIdx), "UTF-8"),
+						URLDecoder.decode(param.substring(separatorIdx + 1), "UTF-8"));
+			}
+		}
+
+		return params;
+	}
+
+	private static String readBody(InputStream body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = body.read(buffer)) > 0) {
+			bytes.write(buffer, 0, read);
+		}
+
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
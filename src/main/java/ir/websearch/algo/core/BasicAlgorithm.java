@@ -1,203 +1,452 @@
 package ir.websearch.algo.core;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.util.CharArraySet;
 import org.apache.lucene.analysis.util.StopwordAnalyzerBase;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.IntField;
-import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.misc.HighFreqTerms;
 import org.apache.lucene.misc.HighFreqTerms.TotalTermFreqComparator;
 import org.apache.lucene.misc.TermStats;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.ReferenceManager.RefreshListener;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
 
+import ir.websearch.algo.core.SearchMetrics.Phase;
 import ir.websearch.algo.doc.Document;
-import ir.websearch.algo.helper.CollectionUtils;
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.InputParams;
+import ir.websearch.algo.helper.RecordReader;
 import ir.websearch.algo.query.Query;
 
 public class BasicAlgorithm implements ISearchAlgorithm {
 	
-	private final Collection<Document> docs;
+	private static final String TOP_STOP_WORDS_KEY_PREFIX = "topStopWords.";
+	private static final int TOP_STOP_WORDS = 20;
+	private static final String TOP_TERMS_KEY = "topTerms." + Document.TEXT_FIELD;
+	private static final int SKETCH_WIDTH = 1 << 16;
+	private static final int SKETCH_DEPTH = 4;
+	private static final int SKETCH_CANDIDATES = 1024;
+	
+	private final DocumentsParser docsParser;
 	private final Collection<Query> queries;
+	private final InputParams params;
+	private final SearchMetrics metrics = new SearchMetrics();
 	
-	public BasicAlgorithm(Collection<Document> docs, Collection<Query> queries) {
-		this.docs = docs;
+	/**
+	 * @param docsParser the document collection. Documents are streamed from the file while indexing.
+	 * @param queries the query set.
+	 * @param params the run parameters.
+	 */
+	public BasicAlgorithm(DocumentsParser docsParser, Collection<Query> queries, InputParams params) {
+		this.docsParser = docsParser;
 		this.queries = queries;
+		this.params = params;
 	}
 	
 	@Override
-	public List<String> search() {
-		List<String> outputOfAllQueries = null;
+	public boolean search(ResultSink sink) {
+		boolean searched = false;
+		
+		try (SearchSession session = openSession()) {
+			// Run retrieval experiment.
+			generateQuerySearchResults(queries, session, sink);
+			searched = true;
+		} catch (Exception e) {
+			System.out.println("Faild to search the collection.");
+		}
+		
+		return searched;
+	}
+	
+	@Override
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * @return the time budget of each query, in nanoseconds; {@link SearchSession#NO_BUDGET} for no limit.
+	 */
+	long getQueryBudgetNanos() {
+		return (params.getQueryTimeoutMillis() == 0) ? SearchSession.NO_BUDGET : TimeUnit.MILLISECONDS.toNanos(params.getQueryTimeoutMillis());
+	}
+	
+	/**
+	 * @param query the query.
+	 * @return the amount of documents to retrieve for the query: its own, or else the amount of the run.
+	 */
+	int getHits(Query query) {
+		return query.getK(params.getHits());
+	}
+	
+	/**
+	 * @return the amount of documents collected at once while retrieving a query.
+	 */
+	int getPageSize() {
+		return params.getPageSize();
+	}
+	
+	/**
+	 * @return the retrieval algorithm name of the run.
+	 */
+	String getName() {
+		return params.getRetrievalAlgorithm();
+	}
+	
+	/**
+	 * The method prepares the collection for searching.
+	 * The documents are indexed to lucene, unless a persistent index of the same documents and settings exists.
+	 * The index may be partitioned into shards by the document IDs (see {@link InputParams#getShards()}).
+	 * A read only index may be merged down to fewer segments (see {@link InputParams#getForceMergeSegments()}).
+	 * Then the stop words are calculated and the index is opened for searching.
+	 * @return an open search session. The caller is responsible for closing it.
+	 * @throws Exception
+	 */
+	public SearchSession openSession() throws Exception {
+		return openSession(false);
+	}
+	
+	/**
+	 * The method prepares the collection for searching (see {@link #openSession()}).
+	 * An updatable session holds the index writer, hence a single updatable session may be open on an index directory.
+	 * Only an index of a single shard is updatable, and when the algorithm uses frequent collection stop words, only an index
+	 * of the full schema profile (see {@link IndexUpdater}).
+	 * Its updates are committed along with the index fingerprint, so they are kept when a persistent index is reused.
+	 * @param updatable whether the session should be updatable (see {@link SearchSession#getUpdater()}).
+	 * @return an open search session. The caller is responsible for closing it.
+	 * @throws Exception
+	 */
+	public SearchSession openSession(boolean updatable) throws Exception {
+		String readOnlyReason = getReadOnlyReason();
+		if (updatable && readOnlyReason != null) {
+			throw new IllegalArgumentException(readOnlyReason);
+		}
 		
+		List<Directory> shards = IndexStore.openShards(params.getIndexDir(), params.getShards());
 		try {
-			// Index documents to lucene.
 			Analyzer indexAnalyzer = new StandardAnalyzer();
-			Directory index = new RAMDirectory();
-			indexDocuments(docs, indexAnalyzer, index);
+			IndexSchema schema = new IndexSchema(params.getSchemaProfile(), getQueryFields().keySet(), params);
+			// Only a persistent index is fingerprinted, since the fingerprint reads the whole documents file.
+			String fingerprint = (params.getIndexDir() == null) ? null : fingerprint(indexAnalyzer, schema);
+			if (fingerprint != null && IndexStore.isCurrent(shards, fingerprint)) {
+				System.out.println("Reusing the index at: " + params.getIndexDir() + ".");
+			} else {
+				indexDocuments(indexAnalyzer, shards, schema, fingerprint);
+			}
 			
-			// Run retrieval experiment.
-			Set<String> freqStopWords = calcTopStopWords(index, 20);
-			outputOfAllQueries = generateQuerySearchResults(queries, indexAnalyzer, index, freqStopWords);
+			if (params.getForceMergeSegments() > 0) {
+				long mergeStart = System.nanoTime();
+				if (IndexStore.forceMerge(shards, params.getForceMergeSegments())) {
+					System.out.println("Merged the index down to " + params.getForceMergeSegments() + " segment(s) per shard.");
+				}
+				
+				metrics.addTime(Phase.MERGE, System.nanoTime() - mergeStart);
+			}
+			
+			long stopWordsStart = System.nanoTime();
+			Set<String> freqStopWords = calcTopStopWords(shards, TOP_STOP_WORDS);
+			metrics.addTime(Phase.STOP_WORDS, System.nanoTime() - stopWordsStart);
+			QueryCompiler queryCompiler = createQueryCompiler(createQueryAnalyzer(indexAnalyzer, freqStopWords));
+			if (updatable) {
+				return openUpdatableSession(shards, indexAnalyzer, schema, freqStopWords, queryCompiler);
+			}
+			
+			ReferenceManager<IndexSearcher> searcherManager = (shards.size() == 1) 
+					? new SearcherManager(shards.get(0), null) : new ShardSearcherManager(shards);
+			return new SearchSession(this, shards, searcherManager, null, queryCompiler, createResultCache());
 		} catch (Exception e) {
-			System.out.println("Faild to search the collection.");
-			outputOfAllQueries = null;
+			IOUtils.close(shards);
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return why the index of the run can only be opened by a read only session; null if it can be opened by an updatable one
+	 * (see {@link #openSession(boolean)}).
+	 */
+	public String getReadOnlyReason() {
+		if (params.getShards() > 1) {
+			return "An updatable session requires a single index shard.";
 		}
 		
-		return outputOfAllQueries;
+		if (usesCollectionStopWords() && IndexSchema.LEAN_PROFILE.equals(params.getSchemaProfile())) {
+			// The text frequencies of the documents replaced or deleted by the updater are read from the stored text.
+			return "An updatable session of collection stop words requires the stored text of the " + IndexSchema.FULL_PROFILE 
+					+ " schema profile.";
+		}
+		
+		return null;
 	}
 	
 	/**
-	 * The method indexes the collection documents.
-	 * @param docs the collection of documents to index. 
-	 * @param indexAnalyzer the {@link Analyzer} used for indexing.
-	 * @param index the index implementation of {@link Directory}.
-	 * @throws IOException 
+	 * The method opens a session searching the index through near real time searchers of the index writer.
+	 * When the algorithm uses frequent collection stop words, the text terms frequencies are tracked along with the updates, 
+	 * and the query compiler is replaced whenever the frequent terms change.
 	 */
-	private static void indexDocuments(Collection<Document> docs, Analyzer indexAnalyzer, Directory index) throws IOException {
-		IndexWriterConfig config = new IndexWriterConfig(indexAnalyzer);
-		try (IndexWriter idxWriter = new IndexWriter(index, config)) {
-			for (Document doc : docs) {
-				// Index document.
-				addDoc(idxWriter, doc);
+	private SearchSession openUpdatableSession(List<Directory> shards, Analyzer indexAnalyzer, IndexSchema schema, Set<String> freqStopWords,
+			QueryCompiler queryCompiler) throws IOException {
+		IndexWriter idxWriter = new IndexWriter(shards.get(0), createWriterConfig(indexAnalyzer, OpenMode.APPEND));
+		try {
+			SearcherManager searcherManager = new SearcherManager(idxWriter, true, null);
+			TermFrequencies textFrequencies = null;
+			if (usesCollectionStopWords()) {
+				textFrequencies = new TermFrequencies(Document.TEXT_FIELD, indexAnalyzer);
+				IndexSearcher searcher = searcherManager.acquire();
+				try {
+					textFrequencies.load(searcher.getIndexReader());
+				} finally {
+					searcherManager.release(searcher);
+				}
 			}
-
+			
+			IndexUpdater updater = new IndexUpdater(idxWriter, searcherManager, schema, textFrequencies, 
+					idxWriter.getCommitData(), params.getRefreshDelayMillis());
+			SearchSession session = new SearchSession(this, shards, searcherManager, updater, queryCompiler, createResultCache());
+			if (textFrequencies != null) {
+				TermFrequencies frequencies = textFrequencies;
+				searcherManager.addListener(new RefreshListener() {
+					
+					private Set<String> currentStopWords = freqStopWords;
+					
+					@Override
+					public void beforeRefresh() {
+					}
+					
+					@Override
+					public void afterRefresh(boolean didRefresh) {
+						if (!didRefresh) {
+							return;
+						}
+						
+						Set<String> topTerms = frequencies.top(TOP_STOP_WORDS);
+						if (!topTerms.equals(currentStopWords)) {
+							currentStopWords = topTerms;
+							session.setQueryCompiler(createQueryCompiler(createQueryAnalyzer(indexAnalyzer, topTerms)));
+							updater.setCommitData(Collections.singletonMap(TOP_STOP_WORDS_KEY_PREFIX + TOP_STOP_WORDS, String.join(" ", topTerms)));
+						}
+					}
+				});
+			}
+			
+			// Started once the listeners of the session are registered, so an awaited update is searched by them as well.
+			updater.start();
+			return session;
 		} catch (IOException e) {
+			idxWriter.close();
 			throw e;
 		}
 	}
-
+	
 	/**
-	 * The method generate lucene queries and execute search. 
-	 * @param queries the search query.
-	 * @param idxAnalyzer the index used for the collection indexing.
-	 * @param index the collection index to search.
-	 * @param freqStopWords a set of top stop words from the collection (most frequent).
-	 * @return query search results in printable format.
-	 * @throws Exception 
+	 * The method builds the index of the collection with the given schema profile, without searching it.
+	 * @param index the index implementation of {@link Directory}.
+	 * @param schemaProfile the schema profile (see {@link IndexSchema}).
+	 * @throws IOException
+	 */
+	public void buildIndex(Directory index, String schemaProfile) throws IOException {
+		Analyzer indexAnalyzer = new StandardAnalyzer();
+		IndexSchema schema = new IndexSchema(schemaProfile, getQueryFields().keySet(), params);
+		indexDocuments(indexAnalyzer, Collections.singletonList(index), schema, null);
+	}
+	
+	private String fingerprint(Analyzer indexAnalyzer, IndexSchema schema) throws IOException {
+		String fingerprint = IndexStore.fingerprint(new File(params.getDocsFileName()), indexAnalyzer, schema);
+		return IndexStore.sliceFingerprint(fingerprint, params.getSlice(), params.getSlices());
+	}
+	
+	/**
+	 * @return whether the query analyzer drops the most frequent collection terms (see {@link #calcTopStopWords(List, int)}).
+	 */
+	protected boolean usesCollectionStopWords() {
+		return true;
+	}
+	
+	/**
+	 * @return the index fields the algorithm queries by default, along with their boosts, in clause order.
+	 */
+	protected Map<String, Float> getDefaultQueryFields() {
+		return Collections.singletonMap(Document.TEXT_FIELD, 1f);
+	}
+	
+	/**
+	 * @return the index fields the algorithm queries, along with their boosts: the default fields of the algorithm,
+	 * overridden and extended by the boosts of the run parameters (see {@link InputParams#getFieldBoosts()}).
+	 */
+	private Map<String, Float> getQueryFields() {
+		Map<String, Float> queryFields = new LinkedHashMap<>(getDefaultQueryFields());
+		queryFields.putAll(params.getFieldBoosts());
+		return queryFields;
+	}
+	
+	/**
+	 * The method indexes the collection documents.
+	 * Documents records are read, parsed and indexed concurrently through an {@link IngestionPipeline}.
+	 * Only the documents of the slice of this process are indexed (see {@link IndexStore#sliceOf(int, int)}).
+	 * Each document is routed to the index writer of its shard (see {@link IndexStore#shardOf(int, int)}).
+	 * Any previous index in the directories is replaced. The fingerprint is committed only once all the documents are indexed.
+	 * When the algorithm uses frequent collection stop words, the text terms are counted into a {@link TermSketch} while they
+	 * are indexed, and its most frequent terms are committed along with the first shard (see {@link #calcTopStopWords(List, int)}).
+	 * @param indexAnalyzer the {@link Analyzer} used for indexing.
+	 * @param shards the shard directories of the index, by shard number.
+	 * @param schema the index schema.
+	 * @param fingerprint the fingerprint of the documents and the index settings; null for an index which is not persistent.
+	 * @throws IOException 
 	 */
-	private List<String> generateQuerySearchResults(Collection<Query> queries, Analyzer indexAnalyzer, 
-			Directory index, Set<String> freqStopWords) throws Exception {
-		int hitsPerPage = 10;
-		List<String> outputOfAllQueries = new ArrayList<String>();
-		final CharArraySet queryStopWords = calcStopWordsForQueryAnalyzer(indexAnalyzer, freqStopWords);
-		Analyzer queyrAnalyzer = new StandardAnalyzer(queryStopWords);
-		try (IndexReader idxReader = DirectoryReader.open(index)) {
-			IndexSearcher searcher = new IndexSearcher(idxReader);			
-			for (Query query : queries) {
-				TopScoreDocCollector collector = TopScoreDocCollector.create(hitsPerPage);
-				List<String> queryOutput = generateQueryOutput(queyrAnalyzer, searcher, collector, query);				
-				outputOfAllQueries.addAll(queryOutput);
+	private void indexDocuments(Analyzer indexAnalyzer, List<Directory> shards, IndexSchema schema, String fingerprint) throws IOException {
+		IngestionPipeline pipeline = new IngestionPipeline(params.getParseThreads(), params.getIndexThreads(), params.getIngestQueueDepth());
+		IndexWriter[] idxWriters = new IndexWriter[shards.size()];
+		TermSketch.CountingAnalyzer countingAnalyzer = usesCollectionStopWords() 
+				? new TermSketch.CountingAnalyzer(indexAnalyzer, Document.TEXT_FIELD, SKETCH_WIDTH, SKETCH_DEPTH, SKETCH_CANDIDATES) : null;
+		try (RecordReader records = docsParser.records()) {
+			for (int shard = 0; shard < idxWriters.length; shard++) {
+				idxWriters[shard] = new IndexWriter(shards.get(shard), 
+						createWriterConfig((countingAnalyzer != null) ? countingAnalyzer : indexAnalyzer, OpenMode.CREATE));
 			}
-		} catch (ParseException | IOException e) {
-			throw e;
+			
+			pipeline.run(records, record -> {
+				Document doc = DocumentsParser.parseDocument(record);
+				if (params.getSlices() > 1 && IndexStore.sliceOf(doc.getId(), params.getSlices()) != params.getSlice()) {
+					return null;
+				}
+				
+				return new ShardDocument(IndexStore.shardOf(doc.getId(), idxWriters.length), schema.createDoc(doc));
+			}, doc -> idxWriters[doc.shard].addDocument(doc.fields));
+			for (int shard = 0; shard < idxWriters.length; shard++) {
+				Map<String, String> commitData = new HashMap<>();
+				if (fingerprint != null) {
+					commitData.put(IndexStore.FINGERPRINT_KEY, IndexStore.shardFingerprint(fingerprint, shard, idxWriters.length));
+				}
+				
+				if (shard == 0 && countingAnalyzer != null) {
+					commitData.put(TOP_TERMS_KEY, countingAnalyzer.getSketch().encode());
+				}
+				
+				idxWriters[shard].setCommitData(commitData);
+			}
+		} finally {
+			IOUtils.close(idxWriters);
 		}
 		
-		return outputOfAllQueries;
+		metrics.addTime(Phase.PARSE, pipeline.getNormalizeNanos());
+		metrics.addTime(Phase.INDEX, pipeline.getIndexNanos());
+		System.out.println(pipeline.getReport());
+		System.out.println("Index size: " + IndexStore.sizeOf(shards) / 1024 + " KB (" + schema.getProfile() + " profile, " 
+				+ shards.size() + " shard(s)).");
 	}
 
 	/**
-	 * The method fetches the inverted list from the index for the given query.
-	 * Afterwards the matching documents are sorted by their tf-idf scores and document ID and given a rank.
-	 * Finally, the method generates a line for each Query, Doc, Rank triplet.   
-	 * @param queyrAnalyzer the query search analyzer.
-	 * @param searcher the query index searcher.
-	 * @param collector the query collector.
-	 * @param query the query to search.
-	 * @return list of output lines. A line for each Query, Doc, Rank triplet.
-	 * @throws ParseException
-	 * @throws IOException
+	 * The method configures an index writer by the ingestion settings of the run parameters: the RAM buffer size,
+	 * the merge policy and the amount of merge threads.
+	 * @param analyzer the analyzer of the written documents.
+	 * @param openMode whether to create a new index or append to an existing one.
+	 * @return the index writer configuration.
 	 */
-	private List<String> generateQueryOutput(Analyzer queyrAnalyzer, IndexSearcher searcher,
-			TopScoreDocCollector collector, Query query) throws ParseException, IOException {
-		org.apache.lucene.search.Query q = generateQuery(queyrAnalyzer, query);
-		searcher.search(q, collector);
-		ScoreDoc[] scoreDocs = collector.topDocs().scoreDocs;
-		System.out.println("Found " + scoreDocs.length + " hits.");
-
-		List<String> queryOutput = new ArrayList<String>();
-		List<ImmutablePair<Integer, Float>> sortedHits = sortSearchHits(searcher, scoreDocs);
-		int rank = 1;
-		for (ImmutablePair<Integer, Float> scoreDoc : sortedHits) {
-			String outputLine = "q" + query.getId() + "," + "doc" + scoreDoc.getKey() + "," + rank;
-			queryOutput.add(outputLine);
-			rank++;
+	private IndexWriterConfig createWriterConfig(Analyzer analyzer, OpenMode openMode) {
+		IndexWriterConfig config = new IndexWriterConfig(analyzer);
+		config.setOpenMode(openMode);
+		config.setRAMBufferSizeMB(params.getRamBufferSizeMB());
+		switch (params.getMergePolicy()) {
+		case "logByteSize":
+			config.setMergePolicy(new LogByteSizeMergePolicy());
+			break;
+		case "logDoc":
+			config.setMergePolicy(new LogDocMergePolicy());
+			break;
+		case "none":
+			config.setMergePolicy(NoMergePolicy.INSTANCE);
+			break;
+		default:
+			config.setMergePolicy(new TieredMergePolicy());
 		}
 		
-		if (CollectionUtils.isEmpty(queryOutput)) {
-			// No documents are retrieved for a query. Create dummy output.
-			String dummayOutputLine = "q" + query.getId() + "," + "dummy" + "," + 1;
-			queryOutput.add(dummayOutputLine);
+		if (params.getMergeThreads() > 0) {
+			ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+			// Like the automatic settings, a few more merges may be pending before the indexing threads are stalled.
+			mergeScheduler.setMaxMergesAndThreads(params.getMergeThreads() + 5, params.getMergeThreads());
+			config.setMergeScheduler(mergeScheduler);
 		}
 		
-		return queryOutput;
+		return config;
 	}
 
-	protected org.apache.lucene.search.Query generateQuery(Analyzer queyrAnalyzer, Query query) throws ParseException {
-		QueryParser parser = new QueryParser(Document.TEXT_FIELD, queyrAnalyzer);
-		org.apache.lucene.search.Query q = parser.parse(query.getQuery());
-		return q;
+	/**
+	 * The method generate lucene queries and execute search. 
+	 * The queries are executed concurrently against the shared session searcher (see {@link QueryBatch}),
+	 * within the time budget of the query set, if any (see {@link InputParams#getBatchTimeoutMillis()}).
+	 * @param queries the search query.
+	 * @param session the search session of the collection index.
+	 * @param sink the consumer of the search results.
+	 * @throws Exception 
+	 */
+	private void generateQuerySearchResults(Collection<Query> queries, SearchSession session, ResultSink sink) throws Exception {
+		long batchBudgetNanos = (params.getBatchTimeoutMillis() == 0) ? SearchSession.NO_BUDGET 
+				: TimeUnit.MILLISECONDS.toNanos(params.getBatchTimeoutMillis());
+		QueryBatch.search(queries, params.getSearchThreads(), batchBudgetNanos, session::search, sink, metrics);
 	}
 
 	/**
-	 * The method sorts the search hits.
-	 * Sorts the matching documents by their tf-idf scores, in descending order. 
-	 * The external document ID is a secondary sort key (i.e., for breaking ties), in ascending order.
-	 * @param searcher the index searcher.
-	 * @param scoreDocs the query hits.
-	 * @return a list of sorted Document ID, Document Score pairs (List<ImmutablePair<DocID, Score>>). 
-	 */
-	private static List<ImmutablePair<Integer, Float>> sortSearchHits(IndexSearcher searcher, ScoreDoc[] scoreDocs) {
-		List<ScoreDoc> hits = Arrays.asList(scoreDocs);
-		Comparator<ImmutablePair<Integer, Float>> docScoreCmp = createDocScoreComparator();
-		List<ImmutablePair<Integer, Float>> sortedHits = hits.stream().
-			map(scoreDoc -> 
-					{
-						int docId = scoreDoc.doc;								
-						org.apache.lucene.document.Document document = null;
-						try {
-							document = searcher.doc(docId);
-						} catch (Exception e) {
-							System.out.println("Faild to extract document from Doc ID: " + docId);
-						}
-						
-						Integer extlDocID = Integer.parseInt(document.get(Document.ID_FIELD));
-						Float score = scoreDoc.score;
-						return new ImmutablePair<Integer, Float>(extlDocID, score);
-					})
-			.sorted(docScoreCmp)
-			.collect(Collectors.toList());
+	 * @return the result cache of a session, reported along with the run metrics; null if the results are not cached.
+	 */
+	private ResultCache createResultCache() {
+		if (params.getResultCacheSize() == 0) {
+			return null;
+		}
 		
-		return sortedHits;
+		ResultCache resultCache = new ResultCache(params.getResultCacheSize());
+		metrics.setResultCache(resultCache);
+		return resultCache;
 	}
-
-	private static Comparator<ImmutablePair<Integer, Float>> createDocScoreComparator() {
-		Comparator<ImmutablePair<Integer, Float>> docScoreCmp = (ds1, ds2) -> ds2.getRight().compareTo(ds1.getRight()); // Sort the matching documents by their tf-idf scores (descending order).
-		docScoreCmp.thenComparing((ds1, ds2) -> ds1.getLeft().compareTo(ds2.getLeft())); // External document ID should be a secondary sort key (ascending order).
-		return docScoreCmp;
+	
+	/**
+	 * @param freqStopWords the most frequent terms of the collection.
+	 * @return the query compiler of the algorithm, given the frequent terms (ignored if the algorithm does not use them).
+	 */
+	QueryCompiler createQueryCompiler(Set<String> freqStopWords) {
+		return createQueryCompiler(createQueryAnalyzer(new StandardAnalyzer(), 
+				usesCollectionStopWords() ? freqStopWords : Collections.emptySet()));
 	}
-
+	
+	/**
+	 * The method creates the compiler of the lucene queries of the algorithm: the query text is analyzed once, 
+	 * and searched in each of the query fields (see {@link QueryCompiler}).
+	 * @param queyrAnalyzer the query search analyzer.
+	 * @return the query compiler.
+	 */
+	private QueryCompiler createQueryCompiler(Analyzer queyrAnalyzer) {
+		return new QueryCompiler(queyrAnalyzer, getQueryFields(), params.getQueryCacheSize());
+	}
+	
+	private static Analyzer createQueryAnalyzer(Analyzer idxAnalyzer, Set<String> freqStopWords) {
+		return new StandardAnalyzer(calcStopWordsForQueryAnalyzer(idxAnalyzer, freqStopWords));
+	}
+	
 	/**
 	 * The method generates a stop words set for the query search analyzer.
 	 * We will want the stop words list to include the stop words of the analyzer which was used for the indexing,
@@ -215,14 +464,63 @@ public class BasicAlgorithm implements ISearchAlgorithm {
 	
 	/**
 	 * The method calculates stop words from the indexed document collection.
+	 * The stop words are read from the frequent terms counted while indexing, if those were saved along with the index 
+	 * (see {@link TermSketch}). Otherwise, the term dictionaries of the index are scanned (see {@link #scanTopStopWords(List, int)}),
+	 * and the stop words are saved along with the index (in the first shard), so they are calculated only once per index.
+	 * @param shards the shard directories of the index from whom to derive stop words.
+	 * @param top the amount of desired stop words.
+	 * @return a set of top stop words.
+	 * @throws Exception
+	 */
+	protected Set<String> calcTopStopWords(List<Directory> shards, int top) throws Exception {
+		String stopWordsKey = TOP_STOP_WORDS_KEY_PREFIX + top;
+		Map<String, String> commitData = IndexStore.readCommitData(shards.get(0));
+		String savedStopWords = commitData.get(stopWordsKey);
+		if (savedStopWords != null) {
+			return savedStopWords.isEmpty() ? new HashSet<>() : new HashSet<>(Arrays.asList(savedStopWords.split(" ")));
+		}
+		
+		String topTerms = commitData.get(TOP_TERMS_KEY);
+		if (topTerms != null && top <= SKETCH_CANDIDATES) {
+			return new HashSet<>(TermSketch.decodeTop(topTerms, top));
+		}
+		
+		Set<String> stopWords = scanTopStopWords(shards, top);
+	    IndexStore.writeCommitData(shards.get(0), Collections.singletonMap(stopWordsKey, String.join(" ", stopWords)));
+	    return stopWords;
+	}
+	
+	/**
+	 * The method scans the term dictionary of the index for the most frequent terms (ignoring the stop words saved with the index).
 	 * @param index the index from whom to derive stop words.
 	 * @param top the amount of desired stop words.
 	 * @return a set of top stop words.
 	 * @throws Exception
 	 */
-	protected Set<String> calcTopStopWords(Directory index, int top) throws Exception {
+	public static Set<String> scanTopStopWords(Directory index, int top) throws Exception {
+		return scanTopStopWords(Collections.singletonList(index), top);
+	}
+	
+	/**
+	 * The method scans the term dictionaries of the index shards for the most frequent terms across all the shards.
+	 * @param shards the shard directories of the index from whom to derive stop words.
+	 * @param top the amount of desired stop words.
+	 * @return a set of top stop words.
+	 * @throws Exception
+	 */
+	public static Set<String> scanTopStopWords(List<Directory> shards, int top) throws Exception {
 		Set<String> stopWords = new HashSet<>(); 
-	    try (IndexReader idxReader = DirectoryReader.open(index)) {
+		IndexReader[] shardReaders = new IndexReader[shards.size()];
+		try {
+			for (int shard = 0; shard < shardReaders.length; shard++) {
+				shardReaders[shard] = DirectoryReader.open(shards.get(shard));
+			}
+		} catch (IOException e) {
+			IOUtils.closeWhileHandlingException(shardReaders);
+			throw e;
+		}
+		
+	    try (IndexReader idxReader = new MultiReader(shardReaders, true)) {
 	    	TotalTermFreqComparator cmp = new HighFreqTerms.TotalTermFreqComparator();
 		    TermStats[] highFreqTerms = HighFreqTerms.getHighFreqTerms(idxReader, top, Document.TEXT_FIELD, cmp);
 		    for (TermStats ts : highFreqTerms) {
@@ -237,18 +535,17 @@ public class BasicAlgorithm implements ISearchAlgorithm {
 	}
 
 	/**
-	 * The method ads a document to the index.
-	 * @param writer the lucene {@link IndexWriter}
-	 * @param doc the document to index.
-	 * @throws IOException
+	 * A normalized document along with the shard it is routed to.
 	 */
-	private static void addDoc(IndexWriter writer, Document doc) throws IOException {
-		org.apache.lucene.document.Document document = new org.apache.lucene.document.Document();
-		document.add(new IntField(Document.ID_FIELD, doc.getId(), Field.Store.YES));
-		document.add(new TextField(Document.TITLE_FIELD, doc.getTitle(), Field.Store.YES));
-		document.add(new TextField(Document.ABSTRACT_FIELD, doc.getAbst(), Field.Store.YES));
-		document.add(new TextField(Document.TEXT_FIELD, doc.getText(), Field.Store.YES));
-		writer.addDocument(document);
+	private static class ShardDocument {
+		
+		private final int shard;
+		private final Iterable<? extends IndexableField> fields;
+		
+		ShardDocument(int shard, Iterable<? extends IndexableField> fields) {
+			this.shard = shard;
+			this.fields = fields;
+		}
 	}
 
 }
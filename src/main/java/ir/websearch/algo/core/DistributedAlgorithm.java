@@ -0,0 +1,443 @@
+package ir.websearch.algo.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.util.BytesRef;
+
+import ir.websearch.algo.core.SearchMetrics.Phase;
+import ir.websearch.algo.helper.InputParams;
+import ir.websearch.algo.query.Query;
+
+/**
+ * The coordinator of a distributed search over {@link ShardWorker} processes, each holding the index of a slice of the collection.
+ * <p>
+ * The collection stop words are calculated once, from the term frequencies of all the workers (the exact top terms are found
+ * in three rounds: the top terms of each worker bound the frequency of the top terms of the collection, then the workers send
+ * their terms above the bound, whose exact frequencies are then summed). Each query is then searched in two rounds: the workers
+ * send the statistics of the query terms, which are summed into global statistics, and then search their slice with the global
+ * statistics. Since the scores are based on the global statistics, the merged top hits are the same as of a single index.
+ * <p>
+ * A worker that fails to connect or respond within the worker timeout is skipped for the request, and for the following requests
+ * until the timeout elapses again, so a slow or dead worker delays the search by a single timeout at a time. The results of the
+ * queries searched meanwhile miss the documents of the skipped worker.
+ */
+public class DistributedAlgorithm implements ISearchAlgorithm {
+
+	private static final int TOP_STOP_WORDS = 20;
+
+	private final Collection<Query> queries;
+	private final InputParams params;
+	private final List<WorkerClient> workers = new ArrayList<>();
+	private final SearchMetrics metrics = new SearchMetrics();
+	private final AtomicInteger partialQueries = new AtomicInteger();
+	private ExecutorService executor;
+	private volatile String stopWordsRequest = null;
+
+	/**
+	 * @param queries the query set.
+	 * @param params the run parameters, with the addresses of the workers.
+	 */
+	public DistributedAlgorithm(Collection<Query> queries, InputParams params) {
+		this.queries = queries;
+		this.params = params;
+		for (InetSocketAddress address : params.getWorkers()) {
+			workers.add(new WorkerClient(address, params.getWorkerTimeoutMillis()));
+		}
+	}
+
+	@Override
+	public boolean search(ResultSink sink) {
+		boolean searched = false;
+
+		executor = Executors.newCachedThreadPool();
+		try {
+			long stopWordsStart = System.nanoTime();
+			Set<String> freqStopWords = calcTopStopWords(TOP_STOP_WORDS);
+			metrics.addTime(Phase.STOP_WORDS, System.nanoTime() - stopWordsStart);
+			stopWordsRequest = ShardWorker.STOP_WORDS_REQUEST + ShardWorker.SEPARATOR + String.join(" ", freqStopWords);
+			long batchBudgetNanos = (params.getBatchTimeoutMillis() == 0) ? SearchSession.NO_BUDGET 
+					: TimeUnit.MILLISECONDS.toNanos(params.getBatchTimeoutMillis());
+			QueryBatch.search(queries, params.getSearchThreads(), batchBudgetNanos, this::searchQuery, sink, metrics);
+			searched = true;
+		} catch (Exception e) {
+			System.out.println("Faild to search the collection.");
+		} finally {
+			executor.shutdownNow();
+			for (WorkerClient worker : workers) {
+				worker.close();
+				if (worker.failures.get() > 0) {
+					System.out.println("Worker " + worker + " was skipped for " + worker.failures.get() + " request(s).");
+				}
+			}
+
+			if (partialQueries.get() > 0) {
+				System.out.println("The results of " + partialQueries.get() + " queries miss the documents of skipped workers.");
+			}
+		}
+
+		return searched;
+	}
+
+	@Override
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * The method searches a query on all the available workers, and merges their top hits.
+	 * The result is partial when a worker was skipped, since it misses the documents of the worker.
+	 * A query of no time left in the query set budget is not searched at all; a query in flight is bounded by the worker timeout.
+	 * @param query the query to search.
+	 * @param budgetNanos the time left for the query, in nanoseconds; {@link SearchSession#NO_BUDGET} for no limit.
+	 * @return the external IDs of the retrieved documents, by rank, and whether they are partial.
+	 * @throws Exception if the workers failed the query (e.g., a query syntax error).
+	 */
+	private SearchResult searchQuery(Query query, long budgetNanos) throws Exception {
+		long allocatedStart = SearchMetrics.currentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		if (budgetNanos <= 0) {
+			metrics.recordQuery(query.getId(), System.nanoTime() - start, 0, 0, true);
+			return new SearchResult(new int[0], true);
+		}
+
+		int k = query.getK(params.getHits());
+		String queryPart = query.getId() + String.valueOf(ShardWorker.SEPARATOR) + query.getQuery();
+		String[][] statsResponses = broadcast(ShardWorker.STATS_REQUEST + ShardWorker.SEPARATOR + queryPart, null);
+		ShardStatistics globalStats = new ShardStatistics();
+		for (String[] response : statsResponses) {
+			if (response != null) {
+				globalStats.add(ShardStatistics.decode(response, 1));
+			}
+		}
+
+		StringBuilder searchRequest = new StringBuilder(ShardWorker.SEARCH_REQUEST);
+		searchRequest.append(ShardWorker.SEPARATOR).append(query.getId()).append(ShardWorker.SEPARATOR).append(k);
+		searchRequest.append(ShardWorker.SEPARATOR).append(query.getQuery()).append(ShardWorker.SEPARATOR);
+		globalStats.encode(searchRequest);
+		String[][] hitsResponses = broadcast(searchRequest.toString(), statsResponses);
+		long searched = System.nanoTime();
+		int[] docIds = mergeHits(hitsResponses, k);
+		boolean partial = false;
+		for (String[] response : hitsResponses) {
+			if (response == null) {
+				partialQueries.incrementAndGet();
+				partial = true;
+				break;
+			}
+		}
+
+		long end = System.nanoTime();
+		metrics.addTime(Phase.SEARCH, searched - start);
+		metrics.addTime(Phase.SORT, end - searched);
+		long allocated = (allocatedStart < 0) ? -1 : SearchMetrics.currentThreadAllocatedBytes() - allocatedStart;
+		metrics.recordQuery(query.getId(), end - start, docIds.length, allocated, partial);
+		return new SearchResult(docIds, partial);
+	}
+
+	/**
+	 * The method merges the top hits of the workers, each sorted by score (descending) and external ID (ascending).
+	 * @param responses the hits of each worker, as (external ID, score) values; null for a skipped worker.
+	 * @param k the amount of hits to keep.
+	 * @return the external IDs of the top k hits, by rank.
+	 */
+	private static int[] mergeHits(String[][] responses, int k) {
+		int[] positions = new int[responses.length];
+		int[] docIds = new int[k];
+		int count = 0;
+		for (; count < k; count++) {
+			int best = -1;
+			int bestId = 0;
+			float bestScore = 0;
+			for (int w = 0; w < responses.length; w++) {
+				if (responses[w] == null || 1 + 2 * positions[w] >= responses[w].length) {
+					continue;
+				}
+
+				int id = Integer.parseInt(responses[w][1 + 2 * positions[w]]);
+				float score = Float.parseFloat(responses[w][2 + 2 * positions[w]]);
+				int cmp = (best == -1) ? -1 : Float.compare(bestScore, score);
+				if (cmp < 0 || (cmp == 0 && id < bestId)) {
+					best = w;
+					bestId = id;
+					bestScore = score;
+				}
+			}
+
+			if (best == -1) {
+				break;
+			}
+
+			positions[best]++;
+			docIds[count] = bestId;
+		}
+
+		int[] ranked = new int[count];
+		System.arraycopy(docIds, 0, ranked, 0, count);
+		return ranked;
+	}
+
+	/**
+	 * The method finds the most frequent text terms across the slices of all the workers,
+	 * the same as {@link BasicAlgorithm#scanTopStopWords(java.util.List, int)} of a single index (ties go to the greater term).
+	 * @param top the amount of desired stop words.
+	 * @return a set of top stop words.
+	 * @throws Exception if no worker is available.
+	 */
+	private Set<String> calcTopStopWords(int top) throws Exception {
+		// The top terms of each worker, summed, are a lower bound of their collection frequencies.
+		String[][] topResponses = broadcast(ShardWorker.TOP_REQUEST + ShardWorker.SEPARATOR + top, null);
+		Map<String, Long> lowerBounds = new HashMap<>();
+		int available = 0;
+		for (String[] response : topResponses) {
+			if (response != null) {
+				available++;
+				for (int i = 1; i + 1 < response.length; i += 2) {
+					lowerBounds.merge(response[i], Long.parseLong(response[i + 1]), Long::sum);
+				}
+			}
+		}
+
+		if (available == 0) {
+			throw new IOException("No worker is available.");
+		}
+
+		// A term at least as frequent as the k-th lower bound has at least a share of it in one of the workers.
+		List<Long> bounds = new ArrayList<>(lowerBounds.values());
+		bounds.sort(null);
+		long threshold = (bounds.size() < top) ? 0 : bounds.get(bounds.size() - top);
+		long minFreq = Math.max(1, (threshold + available - 1) / available);
+		String[][] aboveResponses = broadcast(ShardWorker.ABOVE_REQUEST + ShardWorker.SEPARATOR + minFreq, topResponses);
+		Set<String> candidates = new HashSet<>();
+		for (String[] response : aboveResponses) {
+			if (response != null) {
+				for (int i = 1; i + 1 < response.length; i += 2) {
+					candidates.add(response[i]);
+				}
+			}
+		}
+
+		if (candidates.isEmpty()) {
+			return new HashSet<>();
+		}
+		
+		List<String> candidateList = new ArrayList<>(candidates);
+		String[][] freqResponses = broadcast(ShardWorker.FREQS_REQUEST + ShardWorker.SEPARATOR
+				+ String.join(String.valueOf(ShardWorker.SEPARATOR), candidateList), aboveResponses);
+		long[] freqs = new long[candidateList.size()];
+		for (String[] response : freqResponses) {
+			if (response != null) {
+				for (int i = 0; i < freqs.length; i++) {
+					freqs[i] += Long.parseLong(response[i + 1]);
+				}
+			}
+		}
+
+		// Rank by frequency, then by the term bytes, as the index term dictionary does.
+		BytesRef[] terms = new BytesRef[freqs.length];
+		List<Integer> ranked = new ArrayList<>(freqs.length);
+		for (int i = 0; i < freqs.length; i++) {
+			terms[i] = new BytesRef(candidateList.get(i));
+			ranked.add(i);
+		}
+
+		ranked.sort((a, b) -> (freqs[a] == freqs[b]) ? terms[b].compareTo(terms[a]) : Long.compare(freqs[b], freqs[a]));
+		Set<String> stopWords = new HashSet<>();
+		for (int i = 0; i < Math.min(top, ranked.size()); i++) {
+			stopWords.add(candidateList.get(ranked.get(i)));
+		}
+
+		return stopWords;
+	}
+
+	/**
+	 * The method sends a request to the workers concurrently, and waits for their responses.
+	 * @param request the request line.
+	 * @param previous the responses of the previous round of the request, so workers skipped by it are skipped again;
+	 * null to send the request to all the workers.
+	 * @return the response values of each worker, by worker; null for a skipped worker.
+	 * @throws Exception if a worker responded with an error.
+	 */
+	private String[][] broadcast(String request, String[][] previous) throws Exception {
+		List<Future<String[]>> futures = new ArrayList<>(workers.size());
+		for (int w = 0; w < workers.size(); w++) {
+			WorkerClient worker = workers.get(w);
+			boolean skip = (previous != null && previous[w] == null) || worker.isDown();
+			futures.add(skip ? null : executor.submit(() -> worker.request(request, stopWordsRequest)));
+		}
+
+		String[][] responses = new String[workers.size()][];
+		for (int w = 0; w < workers.size(); w++) {
+			if (futures.get(w) == null) {
+				continue;
+			}
+
+			try {
+				responses[w] = futures.get(w).get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (!(cause instanceof IOException)) {
+					throw (cause instanceof Exception) ? (Exception) cause : e;
+				}
+
+				// The worker is dead or slow, skip it for a while.
+				workers.get(w).markDown();
+			}
+		}
+
+		return responses;
+	}
+
+	/**
+	 * The connections to a single worker. Each connection serves a single request at a time,
+	 * so concurrent requests are sent over separate connections, which are kept open for the following requests.
+	 */
+	private static class WorkerClient implements Closeable {
+
+		private final InetSocketAddress address;
+		private final int timeoutMillis;
+		private final Deque<Connection> idleConnections = new ArrayDeque<>();
+		private final AtomicInteger failures = new AtomicInteger();
+		private volatile long downUntilNanos = 0;
+
+		WorkerClient(InetSocketAddress address, int timeoutMillis) {
+			this.address = address;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		boolean isDown() {
+			return downUntilNanos != 0 && System.nanoTime() - downUntilNanos < 0;
+		}
+
+		void markDown() {
+			failures.incrementAndGet();
+			downUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		}
+
+		/**
+		 * @param request the request line.
+		 * @param stopWordsRequest the stop words request, sent first if the connection has not sent it yet; null for none.
+		 * @return the response values.
+		 * @throws IOException if the worker failed to connect or respond in time.
+		 */
+		String[] request(String request, String stopWordsRequest) throws IOException {
+			Connection connection;
+			synchronized (idleConnections) {
+				connection = idleConnections.poll();
+			}
+
+			if (connection == null) {
+				connection = new Connection(address, timeoutMillis);
+			}
+
+			String[] response;
+			try {
+				if (stopWordsRequest != null && !stopWordsRequest.equals(connection.stopWordsRequest)) {
+					checkResponse(connection.exchange(stopWordsRequest));
+					connection.stopWordsRequest = stopWordsRequest;
+				}
+
+				response = connection.exchange(request);
+			} catch (IOException e) {
+				connection.close();
+				throw e;
+			}
+
+			synchronized (idleConnections) {
+				idleConnections.push(connection);
+			}
+
+			return checkResponse(response);
+		}
+
+		private String[] checkResponse(String[] response) {
+			if (ShardWorker.ERROR.equals(response[0])) {
+				throw new IllegalArgumentException("Worker " + this + " failed the request: " + response[1]);
+			}
+
+			return response;
+		}
+
+		@Override
+		public String toString() {
+			return address.getHostString() + ":" + address.getPort();
+		}
+
+		@Override
+		public void close() {
+			synchronized (idleConnections) {
+				for (Connection connection : idleConnections) {
+					connection.close();
+				}
+
+				idleConnections.clear();
+			}
+		}
+	}
+
+	private static class Connection {
+
+		private final Socket socket;
+		private final BufferedReader in;
+		private final Writer out;
+		private String stopWordsRequest = null;
+
+		Connection(InetSocketAddress address, int timeoutMillis) throws IOException {
+			socket = new Socket();
+			try {
+				socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), timeoutMillis);
+				socket.setSoTimeout(timeoutMillis);
+				socket.setTcpNoDelay(true);
+				in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		String[] exchange(String request) throws IOException {
+			out.write(request);
+			out.write('\n');
+			out.flush();
+			String response = in.readLine();
+			if (response == null) {
+				throw new EOFException("The worker closed the connection.");
+			}
+
+			return response.split(String.valueOf(ShardWorker.SEPARATOR), -1);
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+}
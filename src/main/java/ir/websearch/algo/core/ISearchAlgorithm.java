@@ -1,13 +1,18 @@
 package ir.websearch.algo.core;
 
-import java.util.List;
-
 public interface ISearchAlgorithm {
 	
 	/**
 	 * The method performers search for the given document collection and query set. 
-	 * @return search results in printable formated lines (QueryID, DocID, Rank).
+	 * The results of each query are written to the sink as soon as they are ready, in the query set order.
+	 * @param sink the consumer of the search results.
+	 * @return true if all the queries were searched; false otherwise.
+	 */
+	public boolean search(ResultSink sink);
+	
+	/**
+	 * @return the metrics of the run, recorded while searching.
 	 */
-	public List<String> search();
+	public SearchMetrics getMetrics();
 
 }
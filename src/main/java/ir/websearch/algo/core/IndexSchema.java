@@ -0,0 +1,121 @@
+package ir.websearch.algo.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexOptions;
+
+import ir.websearch.algo.doc.Document;
+import ir.websearch.algo.helper.InputParams;
+
+/**
+ * The index schema: which document fields are indexed and how.
+ * Two profiles are supported:
+ * <ul>
+ * <li>full - all the text fields are indexed and stored.</li>
+ * <li>lean - only the fields the search algorithm queries are indexed, and no text is stored.</li>
+ * </ul>
+ * In both profiles the external document ID is indexed as a numeric field and as doc values,
+ * and the index options and norms of each text field can be overridden by the run parameters.
+ */
+public class IndexSchema {
+
+	public static final String FULL_PROFILE = "full";
+	public static final String LEAN_PROFILE = "lean";
+
+	private static final List<String> TEXT_FIELDS = Arrays.asList(Document.TITLE_FIELD, Document.ABSTRACT_FIELD, Document.TEXT_FIELD);
+
+	private final String profile;
+	private final boolean storeFields;
+	private final Map<String, FieldType> fieldTypes = new LinkedHashMap<>();
+
+	/**
+	 * @param profile the schema profile name.
+	 * @param queryFields the fields the search algorithm queries.
+	 * @param params the run parameters holding the per field overrides.
+	 */
+	public IndexSchema(String profile, Collection<String> queryFields, InputParams params) {
+		if (!FULL_PROFILE.equals(profile) && !LEAN_PROFILE.equals(profile)) {
+			throw new IllegalArgumentException("Unknown schema profile: " + profile);
+		}
+
+		this.profile = profile;
+		this.storeFields = FULL_PROFILE.equals(profile);
+		for (String field : TEXT_FIELDS) {
+			if (storeFields || queryFields.contains(field)) {
+				FieldType fieldType = new FieldType(storeFields ? TextField.TYPE_STORED : TextField.TYPE_NOT_STORED);
+				IndexOptions indexOptions = params.getFieldIndexOptions(field);
+				if (indexOptions != null) {
+					fieldType.setIndexOptions(indexOptions);
+				}
+
+				Boolean omitNorms = params.getFieldOmitNorms(field);
+				if (omitNorms != null) {
+					fieldType.setOmitNorms(omitNorms);
+				}
+
+				fieldType.freeze();
+				fieldTypes.put(field, fieldType);
+			}
+		}
+	}
+
+	/**
+	 * The method creates the lucene document to index.
+	 * @param doc the document to index.
+	 * @return the lucene document.
+	 */
+	public org.apache.lucene.document.Document createDoc(Document doc) {
+		org.apache.lucene.document.Document document = new org.apache.lucene.document.Document();
+		document.add(new IntField(Document.ID_FIELD, doc.getId(), storeFields ? Field.Store.YES : Field.Store.NO));
+		document.add(new NumericDocValuesField(Document.ID_FIELD, doc.getId()));
+		for (Map.Entry<String, FieldType> fieldType : fieldTypes.entrySet()) {
+			String field = fieldType.getKey();
+			document.add(new Field(field, getFieldText(field).apply(doc), fieldType.getValue()));
+		}
+
+		return document;
+	}
+
+	/**
+	 * @return the schema profile name.
+	 */
+	public String getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return a description of the schema, changing with any of the schema settings (used for fingerprinting the index).
+	 */
+	public String describe() {
+		StringBuilder description = new StringBuilder(profile);
+		for (Map.Entry<String, FieldType> fieldType : fieldTypes.entrySet()) {
+			FieldType type = fieldType.getValue();
+			description.append(',').append(fieldType.getKey()).append(':').append(type.indexOptions())
+					.append(type.omitNorms() ? ":omitNorms" : "").append(type.stored() ? ":stored" : "");
+		}
+
+		return description.toString();
+	}
+
+	private static Function<Document, String> getFieldText(String field) {
+		switch (field) {
+		case Document.TITLE_FIELD:
+			return Document::getTitle;
+		case Document.ABSTRACT_FIELD:
+			return Document::getAbst;
+		default:
+			return Document::getText;
+		}
+	}
+
+}
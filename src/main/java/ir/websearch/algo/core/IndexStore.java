@@ -0,0 +1,297 @@
+package ir.websearch.algo.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.util.StopwordAnalyzerBase;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.Version;
+
+/**
+ * Helper for placing the index and for reusing a persistent index across runs.
+ * A persistent index carries (in its commit user data) a fingerprint of the documents file and the index settings,
+ * along with values derived from the index (e.g. the top stop words), so later runs can skip rebuilding them.
+ */
+public class IndexStore {
+
+	public static final String FINGERPRINT_KEY = "fingerprint";
+	public static final String SHARD_DIR_PREFIX = "shard-";
+
+	/**
+	 * Version of the index schema (the fields and how they are indexed). Must be changed with the schema,
+	 * so indexes built by an older schema are not reused.
+	 */
+	private static final int SCHEMA_VERSION = 2;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The method opens the directory holding the index.
+	 * @param indexDir the file system path of a persistent index; null or empty for an in-memory index.
+	 * @return the index directory. A persistent index is memory mapped where the platform supports it.
+	 * @throws IOException
+	 */
+	public static Directory openDirectory(String indexDir) throws IOException {
+		if (indexDir == null || indexDir.isEmpty()) {
+			return new RAMDirectory();
+		}
+
+		return FSDirectory.open(Paths.get(indexDir));
+	}
+
+	/**
+	 * The method opens the directories holding the shards of the index.
+	 * A single shard is placed directly in the index directory, so it is the same as an unsharded index.
+	 * Multiple shards are placed in sub directories of the index directory (see {@link #SHARD_DIR_PREFIX}).
+	 * @param indexDir the file system path of a persistent index; null or empty for an in-memory index.
+	 * @param shards the amount of shards.
+	 * @return the shard directories, by shard number.
+	 * @throws IOException
+	 */
+	public static List<Directory> openShards(String indexDir, int shards) throws IOException {
+		List<Directory> directories = new ArrayList<>(shards);
+		try {
+			for (int shard = 0; shard < shards; shard++) {
+				boolean persistent = indexDir != null && !indexDir.isEmpty() && shards > 1;
+				directories.add(openDirectory(persistent ? Paths.get(indexDir, SHARD_DIR_PREFIX + shard).toString() : indexDir));
+			}
+		} catch (IOException e) {
+			IOUtils.closeWhileHandlingException(directories);
+			throw e;
+		}
+
+		return directories;
+	}
+
+	/**
+	 * The method assigns a document to a shard by a hash of its external ID, so neighboring IDs are spread across the shards.
+	 * @param docId the external document ID.
+	 * @param shards the amount of shards.
+	 * @return the shard number of the document.
+	 */
+	public static int shardOf(int docId, int shards) {
+		return Math.floorMod(hash(docId), shards);
+	}
+
+	/**
+	 * The method assigns a document to a slice of the collection (indexed by a separate process) by a hash of its external ID.
+	 * The slice is taken from the high bits of the hash, while the shard is taken from its low bits,
+	 * so the documents of a slice are still spread across the shards of the slice.
+	 * @param docId the external document ID.
+	 * @param slices the amount of slices.
+	 * @return the slice number of the document.
+	 */
+	public static int sliceOf(int docId, int slices) {
+		return (int) (((hash(docId) & 0xFFFFFFFFL) * slices) >>> 32);
+	}
+
+	/**
+	 * The method qualifies the index fingerprint with the slice of the collection the index holds.
+	 * @param fingerprint the fingerprint of the whole collection index (see {@link #fingerprint(File, Analyzer, IndexSchema)}).
+	 * @param slice the slice number.
+	 * @param slices the amount of slices.
+	 * @return the fingerprint of the slice index. The fingerprint of a single slice is the collection index fingerprint.
+	 */
+	public static String sliceFingerprint(String fingerprint, int slice, int slices) {
+		return (slices == 1) ? fingerprint : fingerprint + ";slice=" + slice + "/" + slices;
+	}
+
+	private static int hash(int docId) {
+		// The finalization step of MurmurHash3.
+		int hash = docId;
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	/**
+	 * The method qualifies the index fingerprint with the shard, so a shard is not reused after the amount of shards changes.
+	 * @param fingerprint the fingerprint of the whole index (see {@link #fingerprint(File, Analyzer, IndexSchema)}).
+	 * @param shard the shard number.
+	 * @param shards the amount of shards.
+	 * @return the fingerprint of the shard. The fingerprint of a single shard is the index fingerprint.
+	 */
+	public static String shardFingerprint(String fingerprint, int shard, int shards) {
+		return (shards == 1) ? fingerprint : fingerprint + ";shard=" + shard + "/" + shards;
+	}
+
+	/**
+	 * The method calculates the fingerprint of an index built from the given documents file with the given analyzer and schema.
+	 * @param docsFile the documents file.
+	 * @param indexAnalyzer the analyzer used for indexing.
+	 * @param schema the index schema.
+	 * @return the fingerprint.
+	 * @throws IOException
+	 */
+	public static String fingerprint(File docsFile, Analyzer indexAnalyzer, IndexSchema schema) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long length = 0;
+		try (InputStream in = new FileInputStream(docsFile)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, read);
+				length += read;
+			}
+		}
+
+		StringBuilder fingerprint = new StringBuilder();
+		fingerprint.append("schema=").append(SCHEMA_VERSION).append(':').append(schema.describe());
+		fingerprint.append(";lucene=").append(Version.LATEST);
+		fingerprint.append(";analyzer=").append(indexAnalyzer.getClass().getName());
+		if (indexAnalyzer instanceof StopwordAnalyzerBase) {
+			List<String> stopWords = new ArrayList<>();
+			for (Object stopWord : ((StopwordAnalyzerBase) indexAnalyzer).getStopwordSet()) {
+				stopWords.add(new String((char[]) stopWord));
+			}
+
+			Collections.sort(stopWords);
+			fingerprint.append(";stopwords=").append(Integer.toHexString(stopWords.hashCode()));
+		}
+
+		fingerprint.append(";docs=").append(length).append(':').append(Long.toHexString(crc.getValue()));
+		return fingerprint.toString();
+	}
+
+	/**
+	 * The method reads the user data of the latest index commit.
+	 * @param index the index directory.
+	 * @return the commit user data; an empty map if there is no index in the directory.
+	 * @throws IOException
+	 */
+	public static Map<String, String> readCommitData(Directory index) throws IOException {
+		if (!DirectoryReader.indexExists(index)) {
+			return Collections.emptyMap();
+		}
+
+		return SegmentInfos.readLatestCommit(index).getUserData();
+	}
+
+	/**
+	 * The method adds the given entries to the user data of the index and commits it.
+	 * @param index the index directory.
+	 * @param entries the entries to add (existing keys are overridden).
+	 * @throws IOException
+	 */
+	public static void writeCommitData(Directory index, Map<String, String> entries) throws IOException {
+		IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer());
+		config.setOpenMode(OpenMode.APPEND);
+		try (IndexWriter idxWriter = new IndexWriter(index, config)) {
+			Map<String, String> commitData = new HashMap<>(idxWriter.getCommitData());
+			commitData.putAll(entries);
+			idxWriter.setCommitData(commitData);
+			idxWriter.commit();
+		} catch (IOException e) {
+			throw e;
+		}
+	}
+
+	/**
+	 * The method merges the segments of each shard of the index down to the given amount, if it has more.
+	 * The segments are merged in order (by a log merge policy), so the documents keep their order, hence ranking ties are kept.
+	 * The commit user data of the index is kept.
+	 * @param shards the shard directories of the index.
+	 * @param maxSegments the maximal amount of segments of each shard.
+	 * @return true if any of the shards was merged.
+	 * @throws IOException
+	 */
+	public static boolean forceMerge(List<Directory> shards, int maxSegments) throws IOException {
+		boolean merged = false;
+		for (Directory shard : shards) {
+			if (!DirectoryReader.indexExists(shard) || SegmentInfos.readLatestCommit(shard).size() <= maxSegments) {
+				continue;
+			}
+
+			IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer());
+			config.setOpenMode(OpenMode.APPEND);
+			config.setMergePolicy(new LogByteSizeMergePolicy());
+			try (IndexWriter idxWriter = new IndexWriter(shard, config)) {
+				idxWriter.forceMerge(maxSegments);
+				idxWriter.commit();
+			}
+
+			merged = true;
+		}
+
+		return merged;
+	}
+
+	/**
+	 * @param index the index directory.
+	 * @return the total size of the index files, in bytes.
+	 * @throws IOException
+	 */
+	public static long sizeOf(Directory index) throws IOException {
+		long size = 0;
+		for (String file : index.listAll()) {
+			if (!IndexWriter.WRITE_LOCK_NAME.equals(file)) {
+				size += index.fileLength(file);
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * @param shards the shard directories of the index.
+	 * @return the total size of the index files of all the shards, in bytes.
+	 * @throws IOException
+	 */
+	public static long sizeOf(List<Directory> shards) throws IOException {
+		long size = 0;
+		for (Directory shard : shards) {
+			size += sizeOf(shard);
+		}
+
+		return size;
+	}
+
+	/**
+	 * @param shards the shard directories of the index, by shard number.
+	 * @param fingerprint the expected fingerprint of the whole index.
+	 * @return true if each of the directories holds a complete shard with the given fingerprint.
+	 * @throws IOException
+	 */
+	public static boolean isCurrent(List<Directory> shards, String fingerprint) throws IOException {
+		for (int shard = 0; shard < shards.size(); shard++) {
+			if (!isCurrent(shards.get(shard), shardFingerprint(fingerprint, shard, shards.size()))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param index the index directory.
+	 * @param fingerprint the expected fingerprint.
+	 * @return true if the directory holds a complete index with the given fingerprint.
+	 * @throws IOException
+	 */
+	public static boolean isCurrent(Directory index, String fingerprint) throws IOException {
+		return fingerprint.equals(readCommitData(index).get(FINGERPRINT_KEY));
+	}
+
+}
@@ -0,0 +1,301 @@
+package ir.websearch.algo.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TrackingIndexWriter;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager.RefreshListener;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.NumericUtils;
+
+import ir.websearch.algo.doc.Document;
+
+/**
+ * Incremental updates of an open index, keyed on the external document ID ({@link Document#getId()}).
+ * Updates become searchable once the searchers are refreshed, which is done in the background within the given delay
+ * (once started, see {@link #start()}).
+ * Each update returns its index generation, {@link #waitForGeneration(long)} blocks until the generation is searchable.
+ * <p>
+ * The frequencies of the text terms (from which the frequent stop words are derived) are kept up to date along with the documents.
+ * The term frequencies of each document added through the updater are kept by its ID until the update is searchable,
+ * so a replaced or deleted document is subtracted whether it is searchable yet or not. The text of a searchable document
+ * is read from the index, hence the text must be stored (the full schema profile).
+ * The updates of a document ID are serialized, so the frequencies of concurrent updates of the same document do not race.
+ */
+public class IndexUpdater implements Closeable {
+
+	private static final double MIN_REFRESH_DELAY_SECONDS = 0.025;
+	private static final int ID_LOCKS = 64;
+
+	private final IndexWriter writer;
+	private final TrackingIndexWriter trackingWriter;
+	private final SearcherManager searcherManager;
+	private final IndexSchema schema;
+	private final TermFrequencies textFrequencies;
+	/**
+	 * The text term frequencies of the documents updated through the updater which may not be searchable yet, by ID.
+	 */
+	private final Map<Integer, DocFrequencies> docFrequencies = new HashMap<>();
+	private final ReentrantLock[] idLocks = new ReentrantLock[ID_LOCKS];
+	private final Map<String, String> commitData;
+	private final long refreshDelayMillis;
+	private ControlledRealTimeReopenThread<IndexSearcher> refreshThread = null;
+
+	/**
+	 * @param writer the index writer. Owned by the updater from now on.
+	 * @param searcherManager the manager of the searchers over the writer.
+	 * @param schema the index schema.
+	 * @param textFrequencies the text terms frequencies to keep up to date; null if not needed.
+	 * @param commitData the commit user data to commit the updates with (see {@link #setCommitData(Map)}).
+	 * @param refreshDelayMillis the maximal delay until an update becomes searchable.
+	 */
+	IndexUpdater(IndexWriter writer, SearcherManager searcherManager, IndexSchema schema, TermFrequencies textFrequencies,
+			Map<String, String> commitData, long refreshDelayMillis) {
+		this.writer = writer;
+		this.trackingWriter = new TrackingIndexWriter(writer);
+		this.searcherManager = searcherManager;
+		this.schema = schema;
+		this.textFrequencies = textFrequencies;
+		this.commitData = new HashMap<>(commitData);
+		for (int i = 0; i < idLocks.length; i++) {
+			idLocks[i] = new ReentrantLock();
+		}
+		
+		this.refreshDelayMillis = refreshDelayMillis;
+	}
+
+	/**
+	 * The method starts refreshing the searchers in the background.
+	 * The refresh listeners of the searcher manager which the updates should be visible through (e.g., invalidating the cached
+	 * results) must be registered before, so that {@link #waitForGeneration(long)} returns only once they ran.
+	 */
+	void start() {
+		double refreshDelaySeconds = refreshDelayMillis / 1000.0;
+		this.refreshThread = new ControlledRealTimeReopenThread<>(trackingWriter, searcherManager,
+				refreshDelaySeconds, Math.min(refreshDelaySeconds, MIN_REFRESH_DELAY_SECONDS));
+		if (textFrequencies != null) {
+			searcherManager.addListener(new RefreshListener() {
+
+				private long refreshGeneration;
+
+				@Override
+				public void beforeRefresh() {
+					// Called after the refresh thread increments the generation. An update returns its generation once applied,
+					// so an update of a lower generation was applied before the refreshed searcher is opened.
+					refreshGeneration = trackingWriter.getGeneration();
+				}
+
+				@Override
+				public void afterRefresh(boolean didRefresh) {
+					if (didRefresh) {
+						dropSearchable(refreshGeneration - 1);
+					}
+				}
+			});
+		}
+
+		refreshThread.setName("index-refresh");
+		refreshThread.setDaemon(true);
+		refreshThread.start();
+	}
+
+	/**
+	 * The method adds a new document. The caller is responsible for the document ID not being indexed already.
+	 * @param doc the document to add.
+	 * @return the index generation of the update.
+	 * @throws IOException
+	 */
+	public long addDocument(Document doc) throws IOException {
+		if (textFrequencies == null) {
+			return trackingWriter.addDocument(schema.createDoc(doc));
+		}
+		
+		Map<String, long[]> frequencies = textFrequencies.count(doc.getText());
+		ReentrantLock lock = idLock(doc.getId());
+		lock.lock();
+		try {
+			long generation = trackingWriter.addDocument(schema.createDoc(doc));
+			setText(doc.getId(), frequencies, generation);
+			return generation;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The method adds a document, replacing the indexed document of the same ID if any.
+	 * @param doc the document to add.
+	 * @return the index generation of the update.
+	 * @throws IOException
+	 */
+	public long updateDocument(Document doc) throws IOException {
+		if (textFrequencies == null) {
+			return trackingWriter.updateDocument(idTerm(doc.getId()), schema.createDoc(doc));
+		}
+		
+		Map<String, long[]> frequencies = textFrequencies.count(doc.getText());
+		ReentrantLock lock = idLock(doc.getId());
+		lock.lock();
+		try {
+			removeText(doc.getId());
+			long generation = trackingWriter.updateDocument(idTerm(doc.getId()), schema.createDoc(doc));
+			setText(doc.getId(), frequencies, generation);
+			return generation;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param docId the external ID of the document to delete.
+	 * @return the index generation of the update.
+	 * @throws IOException
+	 */
+	public long deleteDocument(int docId) throws IOException {
+		if (textFrequencies == null) {
+			return trackingWriter.deleteDocuments(idTerm(docId));
+		}
+		
+		ReentrantLock lock = idLock(docId);
+		lock.lock();
+		try {
+			removeText(docId);
+			long generation = trackingWriter.deleteDocuments(idTerm(docId));
+			setText(docId, new HashMap<>(), generation);
+			return generation;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The method blocks until the given index generation is searchable.
+	 * @param generation the generation returned by an update.
+	 * @throws InterruptedException
+	 */
+	public void waitForGeneration(long generation) throws InterruptedException {
+		refreshThread.waitForGeneration(generation);
+	}
+
+	/**
+	 * @param entries entries to add to the user data of the following commits (existing keys are overridden).
+	 */
+	public synchronized void setCommitData(Map<String, String> entries) {
+		commitData.putAll(entries);
+	}
+
+	/**
+	 * The method commits the updates to the index directory.
+	 * @throws IOException
+	 */
+	public synchronized void commit() throws IOException {
+		writer.setCommitData(new HashMap<>(commitData));
+		writer.commit();
+	}
+
+	/**
+	 * The method stops refreshing the searchers, commits the updates and closes the writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (refreshThread != null) {
+			refreshThread.close();
+		}
+
+		try {
+			commit();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private ReentrantLock idLock(int docId) {
+		return idLocks[Math.floorMod(docId, idLocks.length)];
+	}
+
+	/**
+	 * The method counts the terms of a document in the text frequencies. Must be called under the lock of the document ID.
+	 * @param frequencies the text term frequencies of the document; empty for a deleted document.
+	 * @param generation the index generation of the update.
+	 */
+	private void setText(int docId, Map<String, long[]> frequencies, long generation) {
+		textFrequencies.add(frequencies);
+		synchronized (docFrequencies) {
+			docFrequencies.put(docId, new DocFrequencies(frequencies, generation));
+		}
+	}
+
+	/**
+	 * The method drops the kept term frequencies of the searchable updates, whose documents are read from the index from now on.
+	 * @param searchableGeneration the latest index generation whose updates are searchable.
+	 */
+	private void dropSearchable(long searchableGeneration) {
+		synchronized (docFrequencies) {
+			for (Iterator<DocFrequencies> docs = docFrequencies.values().iterator(); docs.hasNext();) {
+				if (docs.next().generation <= searchableGeneration) {
+					docs.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The method subtracts the terms of the current document of an ID (if any) from the text frequencies.
+	 * A document of an update which may not be searchable yet is subtracted by its kept frequencies.
+	 * Otherwise the document is searchable and its text is stored.
+	 * Must be called under the lock of the document ID.
+	 */
+	private void removeText(int docId) throws IOException {
+		DocFrequencies frequencies;
+		synchronized (docFrequencies) {
+			frequencies = docFrequencies.get(docId);
+		}
+
+		if (frequencies != null) {
+			textFrequencies.remove(frequencies.frequencies);
+			return;
+		}
+
+		IndexSearcher searcher = searcherManager.acquire();
+		try {
+			for (ScoreDoc scoreDoc : searcher.search(new TermQuery(idTerm(docId)), 1).scoreDocs) {
+				textFrequencies.remove(searcher.doc(scoreDoc.doc).get(Document.TEXT_FIELD));
+			}
+		} finally {
+			searcherManager.release(searcher);
+		}
+	}
+
+	private static class DocFrequencies {
+
+		private final Map<String, long[]> frequencies;
+		private final long generation;
+
+		DocFrequencies(Map<String, long[]> frequencies, long generation) {
+			this.frequencies = frequencies;
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * @param docId the external document ID.
+	 * @return the term of the ID, as indexed by the numeric ID field (full precision).
+	 */
+	private static Term idTerm(int docId) {
+		BytesRefBuilder bytes = new BytesRefBuilder();
+		NumericUtils.intToPrefixCoded(docId, 0, bytes);
+		return new Term(Document.ID_FIELD, bytes.toBytesRef());
+	}
+
+}
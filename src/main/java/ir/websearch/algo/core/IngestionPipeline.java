@@ -0,0 +1,235 @@
+package ir.websearch.algo.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.apache.lucene.index.IndexWriter;
+
+/**
+ * A pipelined ingestion of records into a Lucene index.
+ * The pipeline is made of three stages connected by bounded queues:
+ * <ol>
+ * <li>read - a single thread pulls raw records from the source.</li>
+ * <li>normalize - a pool of workers turns raw records into documents.</li>
+ * <li>index - a pool of workers feeds the documents into a shared {@link DocumentWriter} (e.g., an {@link IndexWriter}).</li>
+ * </ol>
+ * Each stage keeps its own throughput counters (see {@link #getReport()}), so the bottleneck stage can be spotted.
+ * With a single normalize worker and a single index worker the documents are indexed in source order.
+ */
+public class IngestionPipeline {
+
+	private static final Object END_OF_STREAM = new Object();
+
+	private final int normalizeThreads;
+	private final int indexThreads;
+	private final int queueDepth;
+	private final StageStats readStats = new StageStats("read", 1);
+	private final StageStats normalizeStats;
+	private final StageStats indexStats;
+	private long wallNanos = 0;
+
+	/**
+	 * The destination of the normalized documents, e.g. {@code IndexWriter::addDocument}, 
+	 * or a router across the index writers of several shards.
+	 * @param <D> the type of the normalized documents.
+	 */
+	public interface DocumentWriter<D> {
+
+		/**
+		 * @param document the document to add. Called concurrently by the index workers.
+		 * @throws IOException
+		 */
+		void addDocument(D document) throws IOException;
+	}
+
+	/**
+	 * @param normalizeThreads the amount of workers turning raw records into documents.
+	 * @param indexThreads the amount of workers adding documents to the index writer.
+	 * @param queueDepth the capacity of each queue connecting the stages.
+	 */
+	public IngestionPipeline(int normalizeThreads, int indexThreads, int queueDepth) {
+		this.normalizeThreads = normalizeThreads;
+		this.indexThreads = indexThreads;
+		this.queueDepth = queueDepth;
+		this.normalizeStats = new StageStats("normalize", normalizeThreads);
+		this.indexStats = new StageStats("index", indexThreads);
+	}
+
+	/**
+	 * The method runs the pipeline until the source is exhausted and all its records are added to the writer.
+	 * The first failure of any stage aborts the whole pipeline.
+	 * @param source the raw records source. Consumed by a single thread.
+	 * @param normalizer turns a raw record into a document, or null to skip the record. Must be thread safe.
+	 * @param writer the writer to add the documents to. Must be thread safe.
+	 * @throws IOException if any of the stages failed.
+	 */
+	public <R, D> void run(Iterator<R> source, Function<? super R, ? extends D> normalizer, DocumentWriter<? super D> writer) 
+			throws IOException {
+		BlockingQueue<Object> records = new ArrayBlockingQueue<>(queueDepth);
+		BlockingQueue<Object> documents = new ArrayBlockingQueue<>(queueDepth);
+		AtomicInteger activeNormalizers = new AtomicInteger(normalizeThreads);
+
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(1 + normalizeThreads + indexThreads);
+		CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+		try {
+			stages.submit(() -> read(source, records));
+			for (int i = 0; i < normalizeThreads; i++) {
+				stages.submit(() -> normalize(normalizer, records, documents, activeNormalizers));
+			}
+
+			for (int i = 0; i < indexThreads; i++) {
+				stages.submit(() -> index(writer, documents));
+			}
+
+			// Wait for the stages in completion order, so a failure is noticed even if other stages are blocked.
+			for (int i = 0; i < 1 + normalizeThreads + indexThreads; i++) {
+				stages.take().get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Ingestion was interrupted.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+
+			throw new IOException("Ingestion failed.", cause);
+		} finally {
+			executor.shutdownNow();
+			wallNanos = System.nanoTime() - start;
+		}
+	}
+
+	private <R> Void read(Iterator<R> source, BlockingQueue<Object> records) throws InterruptedException {
+		while (true) {
+			long start = System.nanoTime();
+			boolean hasNext = source.hasNext();
+			R record = hasNext ? source.next() : null;
+			readStats.record(System.nanoTime() - start, hasNext);
+			if (!hasNext) {
+				break;
+			}
+
+			records.put(record);
+		}
+
+		for (int i = 0; i < normalizeThreads; i++) {
+			records.put(END_OF_STREAM);
+		}
+
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <R> Void normalize(Function<? super R, ?> normalizer,
+			BlockingQueue<Object> records, BlockingQueue<Object> documents, AtomicInteger activeNormalizers) throws InterruptedException {
+		Object record;
+		while ((record = records.take()) != END_OF_STREAM) {
+			long start = System.nanoTime();
+			Object document = normalizer.apply((R) record);
+			normalizeStats.record(System.nanoTime() - start, true);
+			if (document != null) {
+				documents.put(document);
+			}
+		}
+
+		// The last normalizer to finish signals the end of the documents to the index workers.
+		if (activeNormalizers.decrementAndGet() == 0) {
+			for (int i = 0; i < indexThreads; i++) {
+				documents.put(END_OF_STREAM);
+			}
+		}
+
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <D> Void index(DocumentWriter<D> writer, BlockingQueue<Object> documents) throws InterruptedException, IOException {
+		Object document;
+		while ((document = documents.take()) != END_OF_STREAM) {
+			long start = System.nanoTime();
+			writer.addDocument((D) document);
+			indexStats.record(System.nanoTime() - start, true);
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the time spent by the normalize workers on the last run (summed across the workers), in nanoseconds.
+	 */
+	public long getNormalizeNanos() {
+		return normalizeStats.busyNanos.sum();
+	}
+
+	/**
+	 * @return the time spent by the index workers on the last run (summed across the workers), in nanoseconds.
+	 */
+	public long getIndexNanos() {
+		return indexStats.busyNanos.sum();
+	}
+
+	/**
+	 * The method generates a printable throughput report of the last run.
+	 * The capacity of a stage is the throughput it could sustain if it never waited on its neighbors,
+	 * so the stage with the lowest capacity is the bottleneck.
+	 * @return the report lines.
+	 */
+	public String getReport() {
+		StringBuilder report = new StringBuilder();
+		double wallSeconds = wallNanos / 1e9;
+		report.append(String.format("Ingested %d documents in %.1f ms (%.0f docs/s).",
+				indexStats.items.sum(), wallNanos / 1e6, indexStats.items.sum() / Math.max(wallSeconds, 1e-9)));
+		for (StageStats stats : new StageStats[] { readStats, normalizeStats, indexStats }) {
+			report.append(System.lineSeparator()).append(stats.toString(wallNanos));
+		}
+
+		return report.toString();
+	}
+
+	private static class StageStats {
+
+		private final String name;
+		private final int threads;
+		private final LongAdder items = new LongAdder();
+		private final LongAdder busyNanos = new LongAdder();
+
+		StageStats(String name, int threads) {
+			this.name = name;
+			this.threads = threads;
+		}
+
+		void record(long nanos, boolean item) {
+			busyNanos.add(nanos);
+			if (item) {
+				items.increment();
+			}
+		}
+
+		String toString(long wallNanos) {
+			long count = items.sum();
+			long busy = busyNanos.sum();
+			double capacity = (busy == 0) ? 0 : count / (busy / 1e9 / threads);
+			double utilization = (wallNanos == 0) ? 0 : 100.0 * busy / ((double) wallNanos * threads);
+			return String.format("  %-9s %2d thread(s): %d items, %.1f ms busy, %.0f items/s capacity, %.0f%% utilization.",
+					name, threads, count, busy / 1e6, capacity, utilization);
+		}
+	}
+
+}
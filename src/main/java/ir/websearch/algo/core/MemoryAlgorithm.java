@@ -0,0 +1,184 @@
+package ir.websearch.algo.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+
+import ir.websearch.algo.core.MemoryIndex.QueryNode;
+import ir.websearch.algo.core.MemoryIndex.TopHits;
+import ir.websearch.algo.core.SearchMetrics.Phase;
+import ir.websearch.algo.doc.Document;
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.InputParams;
+import ir.websearch.algo.helper.RecordReader;
+import ir.websearch.algo.query.Query;
+
+/**
+ * The basic algorithm ranking (tf-idf of the document text, with the most frequent collection terms as query stop words)
+ * over a {@link MemoryIndex} instead of a Lucene index. The index is built in memory on every run, which for small and
+ * medium collections is faster than building or opening a Lucene index.
+ * Only the stop words list of the standard analyzer is taken from Lucene, so the analysis is the same as the basic algorithm.
+ */
+public class MemoryAlgorithm implements ISearchAlgorithm {
+
+	private static final int TOP_STOP_WORDS = 20;
+	private static final int SHARED_SCAN_BATCH_SIZE = 256;
+
+	private final DocumentsParser docsParser;
+	private final Collection<Query> queries;
+	private final InputParams params;
+	private final SearchMetrics metrics = new SearchMetrics();
+
+	/**
+	 * @param docsParser the document collection. Documents are streamed from the file while indexing.
+	 * @param queries the query set.
+	 * @param params the run parameters.
+	 */
+	public MemoryAlgorithm(DocumentsParser docsParser, Collection<Query> queries, InputParams params) {
+		this.docsParser = docsParser;
+		this.queries = queries;
+		this.params = params;
+	}
+
+	@Override
+	public boolean search(ResultSink sink) {
+		boolean searched = false;
+
+		try {
+			MemoryIndex index = buildIndex();
+			if (params.isSharedScan()) {
+				QueryBatch.searchBatches(queries, params.getSearchThreads(), SHARED_SCAN_BATCH_SIZE, batch -> search(index, batch), sink, metrics);
+			} else {
+				QueryBatch.search(queries, params.getSearchThreads(), query -> search(index, query), sink, metrics);
+			}
+			
+			searched = true;
+		} catch (Exception e) {
+			System.out.println("Faild to search the collection.");
+		}
+
+		return searched;
+	}
+
+	@Override
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * The method indexes the collection documents, and calculates the query stop words.
+	 * @return the index, ready for searching.
+	 */
+	public MemoryIndex buildIndex() {
+		List<String> indexStopWords = new ArrayList<>();
+		for (Object stopWord : StandardAnalyzer.STOP_WORDS_SET) {
+			indexStopWords.add(new String((char[]) stopWord));
+		}
+
+		MemoryIndex index = new MemoryIndex(indexStopWords);
+		long parseNanos = 0;
+		long indexNanos = 0;
+		try (RecordReader records = docsParser.records()) {
+			while (records.hasNext()) {
+				long start = System.nanoTime();
+				Document doc = DocumentsParser.parseDocument(records.next());
+				long parsed = System.nanoTime();
+				index.addDocument(doc.getId(), doc.getText());
+				parseNanos += parsed - start;
+				indexNanos += System.nanoTime() - parsed;
+			}
+		}
+
+		long trimStart = System.nanoTime();
+		index.trim();
+		indexNanos += System.nanoTime() - trimStart;
+
+		long stopWordsStart = System.nanoTime();
+		Set<String> freqStopWords = index.calcTopTerms(TOP_STOP_WORDS);
+		index.setQueryStopWords(freqStopWords);
+		metrics.addTime(Phase.STOP_WORDS, System.nanoTime() - stopWordsStart);
+		metrics.addTime(Phase.PARSE, parseNanos);
+		metrics.addTime(Phase.INDEX, indexNanos);
+		System.out.println("Indexed " + index.size() + " documents in memory (" + index.sizeInBytes() / 1024 + " KB).");
+		return index;
+	}
+
+	/**
+	 * @param index the collection index (see {@link #buildIndex()}).
+	 * @param query the query to search.
+	 * @return the external IDs of the retrieved documents, by rank.
+	 */
+	public int[] search(MemoryIndex index, Query query) {
+		long allocatedStart = SearchMetrics.currentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		QueryNode q = index.parseQuery(query.getQuery());
+		long parsed = System.nanoTime();
+		TopHits hits = index.search(q, hitsOf(index, query));
+		long searched = System.nanoTime();
+		int[] docIds = hits.ranked();
+		long end = System.nanoTime();
+		metrics.addTime(Phase.QUERY_PARSE, parsed - start);
+		metrics.addTime(Phase.SEARCH, searched - parsed);
+		metrics.addTime(Phase.SORT, end - searched);
+		long allocated = (allocatedStart < 0) ? -1 : SearchMetrics.currentThreadAllocatedBytes() - allocatedStart;
+		metrics.recordQuery(query.getId(), end - start, docIds.length, allocated);
+		return docIds;
+	}
+
+	/**
+	 * The method searches a batch of queries together (see {@link MemoryIndex#search(QueryNode[], int)}).
+	 * The queries share a single top hits size, the largest of their amounts of documents to retrieve, 
+	 * and the ranked documents of each query are then cut to its own amount.
+	 * The latency and allocations of each query are recorded as its share of the batch.
+	 * @param index the collection index (see {@link #buildIndex()}).
+	 * @param batch the queries to search.
+	 * @return the external IDs of the retrieved documents of each of the queries, by rank.
+	 */
+	public int[][] search(MemoryIndex index, List<Query> batch) {
+		long allocatedStart = SearchMetrics.currentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		QueryNode[] nodes = new QueryNode[batch.size()];
+		int k = 1;
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = index.parseQuery(batch.get(i).getQuery());
+			k = Math.max(k, hitsOf(index, batch.get(i)));
+		}
+
+		long parsed = System.nanoTime();
+		TopHits[] hits = index.search(nodes, k);
+		long searched = System.nanoTime();
+		int[][] docIds = new int[hits.length][];
+		for (int i = 0; i < hits.length; i++) {
+			docIds[i] = hits[i].ranked();
+			int queryK = hitsOf(index, batch.get(i));
+			if (docIds[i].length > queryK) {
+				docIds[i] = Arrays.copyOf(docIds[i], queryK);
+			}
+		}
+
+		long end = System.nanoTime();
+		metrics.addTime(Phase.QUERY_PARSE, parsed - start);
+		metrics.addTime(Phase.SEARCH, searched - parsed);
+		metrics.addTime(Phase.SORT, end - searched);
+		long allocated = (allocatedStart < 0) ? -1 : SearchMetrics.currentThreadAllocatedBytes() - allocatedStart;
+		for (int i = 0; i < docIds.length; i++) {
+			metrics.recordQuery(batch.get(i).getId(), (end - start) / docIds.length, docIds[i].length,
+					(allocated < 0) ? -1 : allocated / docIds.length);
+		}
+
+		return docIds;
+	}
+
+	/**
+	 * @return the amount of documents to retrieve for the query (its own, or else the amount of the run), 
+	 * at most the amount of documents of the index.
+	 */
+	private int hitsOf(MemoryIndex index, Query query) {
+		return Math.min(query.getK(params.getHits()), Math.max(1, index.size()));
+	}
+
+}
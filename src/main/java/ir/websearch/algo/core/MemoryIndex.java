@@ -0,0 +1,1173 @@
+package ir.websearch.algo.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A compact in-memory inverted index of the documents text, searched with the same tf-idf ranking as the Lucene index
+ * of the basic algorithm: the standard analyzer tokens (of the normalized text), Lucene's default similarity
+ * (sqrt tf, idf, query norm, coord and the one byte encoded length norm) and the classic query syntax (terms, "-", AND, OR, NOT).
+ * The scores are computed in the same floating point order as Lucene, so ties break the same way.
+ * <p>
+ * Postings are int arrays of (document, frequency) pairs per term, and terms are held by a {@link TermDictionary}.
+ * The index is built by a single thread, and may be searched concurrently once built.
+ */
+public class MemoryIndex {
+
+	private static final int MAX_TOKEN_LENGTH = 255;
+	private static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final float[] NORM_TABLE = new float[256];
+	private static final int MAX_SCAN_GROUP = 64;
+	private static final long SCAN_BUDGET_BYTES = 32L << 20;
+	/**
+	 * The doubles summing the (float) term scores of a document are exact, hence independent of the summation order, as long as
+	 * the sum fits the 53 bits of a double: 24 bits of a float, the bits of the ratio between the largest and smallest
+	 * term scores, and ceil(log2 n) carry bits of n summed scores. The ratio is thus bound by 2^(29 - ceil(log2 n)).
+	 */
+	private static final int EXACT_SUM_BITS = 29;
+
+	static {
+		for (int i = 0; i < NORM_TABLE.length; i++) {
+			NORM_TABLE[i] = byte315ToFloat((byte) i);
+		}
+	}
+
+	private final TermDictionary stopWords = new TermDictionary();
+	private final TermDictionary terms = new TermDictionary();
+	private final Tokenizer docTokenizer = new Tokenizer();
+	private int[][] postings = new int[INITIAL_CAPACITY][];
+	private int[] postingsLengths = new int[INITIAL_CAPACITY];
+	private long[] totalTermFreqs = new long[INITIAL_CAPACITY];
+	private int[] externalIds = new int[INITIAL_CAPACITY];
+	private byte[] norms = new byte[INITIAL_CAPACITY];
+	private int numDocs = 0;
+	private boolean[] queryStopWords = new boolean[0];
+	private int maxFreq = 0;
+	private float minNorm = Float.MAX_VALUE;
+	private float maxNorm = 0.0f;
+	private final ThreadLocal<SharedScan> sharedScans = new ThreadLocal<>();
+
+	/**
+	 * @param stopWords the stop words removed from the documents text (the index analyzer stop words).
+	 */
+	public MemoryIndex(Collection<String> stopWords) {
+		for (String stopWord : stopWords) {
+			this.stopWords.add(stopWord);
+		}
+	}
+
+	/**
+	 * @param externalId the external document ID.
+	 * @param text the document text.
+	 */
+	public void addDocument(int externalId, String text) {
+		int doc = numDocs++;
+		if (doc == externalIds.length) {
+			externalIds = Arrays.copyOf(externalIds, doc * 2);
+			norms = Arrays.copyOf(norms, doc * 2);
+		}
+
+		externalIds[doc] = externalId;
+		int length = 0;
+		Tokenizer tokenizer = docTokenizer.reset(text);
+		while (tokenizer.next()) {
+			if (stopWords.find(tokenizer.buffer, 0, tokenizer.length) >= 0) {
+				continue;
+			}
+
+			addPosting(terms.add(tokenizer.buffer, 0, tokenizer.length), doc);
+			length++;
+		}
+
+		norms[doc] = floatToByte315((float) (1.0 / Math.sqrt(length)));
+	}
+
+	/**
+	 * The method trims the postings to their length, once all the documents are added.
+	 */
+	public void trim() {
+		for (int termId = 0; termId < terms.size(); termId++) {
+			postings[termId] = Arrays.copyOf(postings[termId], postingsLengths[termId]);
+			for (int i = 1; i < postingsLengths[termId]; i += 2) {
+				maxFreq = Math.max(maxFreq, postings[termId][i]);
+			}
+		}
+
+		for (int doc = 0; doc < numDocs; doc++) {
+			float norm = NORM_TABLE[norms[doc] & 0xFF];
+			if (norm > 0) {
+				minNorm = Math.min(minNorm, norm);
+				maxNorm = Math.max(maxNorm, norm);
+			}
+		}
+	}
+
+	/**
+	 * @return the amount of documents.
+	 */
+	public int size() {
+		return numDocs;
+	}
+
+	/**
+	 * @return the approximate heap size of the index, in bytes.
+	 */
+	public long sizeInBytes() {
+		long size = externalIds.length * 4L + norms.length + postingsLengths.length * 4L + totalTermFreqs.length * 8L;
+		for (int termId = 0; termId < terms.size(); termId++) {
+			size += 16 + postings[termId].length * 4L;
+		}
+
+		return size;
+	}
+
+	/**
+	 * The method finds the terms of the highest total frequency, like Lucene's HighFreqTerms
+	 * (ties are broken by the greater term).
+	 * @param top the amount of desired terms.
+	 * @return the most frequent terms.
+	 */
+	public Set<String> calcTopTerms(int top) {
+		// A min heap of term IDs, the least frequent of the top terms at the root.
+		int[] heap = new int[top];
+		int heapSize = 0;
+		for (int termId = 0; termId < terms.size(); termId++) {
+			if (heapSize < top) {
+				heap[heapSize++] = termId;
+				siftUp(heap, heapSize - 1);
+			} else if (top > 0 && compareFrequency(termId, heap[0]) > 0) {
+				heap[0] = termId;
+				siftDown(heap, heapSize);
+			}
+		}
+
+		Set<String> topTerms = new HashSet<>();
+		for (int i = 0; i < heapSize; i++) {
+			topTerms.add(terms.term(heap[i]));
+		}
+
+		return topTerms;
+	}
+
+	/**
+	 * @param queryStopWords terms to drop from queries, in addition to the index stop words.
+	 */
+	public void setQueryStopWords(Collection<String> queryStopWords) {
+		boolean[] stop = new boolean[terms.size()];
+		for (String stopWord : queryStopWords) {
+			int termId = terms.find(stopWord);
+			if (termId >= 0) {
+				stop[termId] = true;
+			}
+		}
+
+		this.queryStopWords = stop;
+	}
+
+	/**
+	 * The method parses a query of the classic Lucene query syntax (as used for the normalized query text).
+	 * @param text the query text.
+	 * @return the query; null if no term is left after analysis.
+	 * @throws IllegalArgumentException if the text is not a valid query.
+	 */
+	public QueryNode parseQuery(String text) {
+		return new QuerySyntax(text).parse();
+	}
+
+	/**
+	 * The method collects the top ranked documents of the query.
+	 * @param query the query (see {@link #parseQuery(String)}); null matches no document.
+	 * @param k the amount of desired documents.
+	 * @return the top documents.
+	 */
+	public TopHits search(QueryNode query, int k) {
+		TopHits hits = new TopHits(k);
+		if (query == null) {
+			return hits;
+		}
+
+		normalize(query);
+		collect(query, hits);
+		return hits;
+	}
+
+	/**
+	 * The method collects the top ranked documents of each of the queries, the same as {@link #search(QueryNode, int)},
+	 * but reads the postings of a term once for a whole group of queries (term at a time), instead of once per query.
+	 * <p>
+	 * The queries are grouped by their most frequent term, so queries sharing the longest postings are searched together.
+	 * While the postings of a term are scanned, the term scores are added to per query and document accumulators.
+	 * The accumulators keep the sums of the required and optional term scores in doubles, which sum the float term scores exactly,
+	 * so the scores are the same as of the per query search. Queries whose scores cannot be summed exactly (e.g., nested
+	 * boolean clauses) are searched per query.
+	 * @param queries the queries (see {@link #parseQuery(String)}); a null query matches no document.
+	 * @param k the amount of desired documents per query.
+	 * @return the top documents of each of the queries.
+	 */
+	public TopHits[] search(QueryNode[] queries, int k) {
+		TopHits[] hits = new TopHits[queries.length];
+		// The shared scan queries, keyed by their most frequent term.
+		long[] scanKeys = new long[queries.length];
+		int scanned = 0;
+		for (int i = 0; i < queries.length; i++) {
+			hits[i] = new TopHits(k);
+			if (queries[i] == null) {
+				continue;
+			}
+
+			normalize(queries[i]);
+			int heaviestTermId = heaviestScanTerm(queries[i]);
+			if (heaviestTermId >= 0) {
+				scanKeys[scanned++] = ((long) heaviestTermId << 32) | i;
+			} else {
+				collect(queries[i], hits[i]);
+			}
+		}
+
+		if (scanned == 0) {
+			return hits;
+		}
+
+		Arrays.sort(scanKeys, 0, scanned);
+		SharedScan scan = sharedScans.get();
+		if (scan == null || scan.numDocs != numDocs) {
+			int groupSize = (int) Math.max(1, Math.min(MAX_SCAN_GROUP, SCAN_BUDGET_BYTES / (Math.max(1, numDocs) * SharedScan.BYTES_PER_ACCUMULATOR)));
+			scan = new SharedScan(groupSize);
+			sharedScans.set(scan);
+		}
+
+		QueryNode[] group = new QueryNode[scan.groupSize];
+		TopHits[] groupHits = new TopHits[scan.groupSize];
+		for (int start = 0; start < scanned; start += scan.groupSize) {
+			int size = Math.min(scan.groupSize, scanned - start);
+			for (int slot = 0; slot < size; slot++) {
+				int i = (int) scanKeys[start + slot];
+				group[slot] = queries[i];
+				groupHits[slot] = hits[i];
+			}
+
+			scan.search(group, groupHits, size);
+		}
+
+		return hits;
+	}
+
+	/**
+	 * @param query a normalized query.
+	 * @return the term of the query of the longest postings; -1 if the query cannot be searched by a shared scan
+	 * (see {@link #search(QueryNode[], int)}), or if its scores cannot be summed exactly in any order.
+	 */
+	private int heaviestScanTerm(QueryNode query) {
+		QueryNode[] scoring = { query };
+		QueryNode[] prohibited = {};
+		if (query instanceof BooleanNode) {
+			scoring = ((BooleanNode) query).clauses;
+			prohibited = ((BooleanNode) query).prohibited;
+			if (scoring.length + prohibited.length > SharedScan.MAX_CLAUSES) {
+				return -1;
+			}
+		}
+
+		int heaviest = -1;
+		int indexedTerms = 0;
+		double minValue = Double.MAX_VALUE;
+		double maxValue = 0;
+		for (QueryNode clause : scoring) {
+			if (!(clause instanceof TermNode)) {
+				return -1;
+			}
+
+			TermNode term = (TermNode) clause;
+			if (term.termId >= 0) {
+				indexedTerms++;
+				minValue = Math.min(minValue, term.value);
+				maxValue = Math.max(maxValue, term.value);
+				if (heaviest < 0 || term.length > postingsLengths[heaviest]) {
+					heaviest = term.termId;
+				}
+			}
+		}
+
+		for (QueryNode clause : prohibited) {
+			if (!(clause instanceof TermNode)) {
+				return -1;
+			}
+		}
+
+		// A query of no indexed scoring term matches no document, and is left to the per query search.
+		if (heaviest < 0) {
+			return -1;
+		}
+
+		int carryBits = 32 - Integer.numberOfLeadingZeros(indexedTerms - 1);
+		int spanBits = EXACT_SUM_BITS - carryBits;
+		if (spanBits <= 0 || maxValue * Math.sqrt(maxFreq) * maxNorm >= Math.scalb(minValue * minNorm, spanBits)) {
+			return -1;
+		}
+
+		return heaviest;
+	}
+
+	private static void normalize(QueryNode query) {
+		float queryNorm = (float) (1.0 / Math.sqrt(query.getValueForNormalization()));
+		query.normalize(Float.isInfinite(queryNorm) || Float.isNaN(queryNorm) ? 1.0f : queryNorm);
+	}
+
+	private void collect(QueryNode query, TopHits hits) {
+		for (int doc = query.nextDoc(); doc != NO_MORE_DOCS; doc = query.nextDoc()) {
+			hits.collect(query.score(), externalIds[doc]);
+		}
+	}
+
+	private void addPosting(int termId, int doc) {
+		if (termId == postings.length) {
+			int capacity = termId * 2;
+			postings = Arrays.copyOf(postings, capacity);
+			postingsLengths = Arrays.copyOf(postingsLengths, capacity);
+			totalTermFreqs = Arrays.copyOf(totalTermFreqs, capacity);
+		}
+
+		int[] termPostings = postings[termId];
+		int length = postingsLengths[termId];
+		totalTermFreqs[termId]++;
+		if (termPostings == null) {
+			postings[termId] = new int[] { doc, 1 };
+			postingsLengths[termId] = 2;
+		} else if (termPostings[length - 2] == doc) {
+			termPostings[length - 1]++;
+		} else {
+			if (length == termPostings.length) {
+				termPostings = Arrays.copyOf(termPostings, length * 2);
+				postings[termId] = termPostings;
+			}
+
+			termPostings[length] = doc;
+			termPostings[length + 1] = 1;
+			postingsLengths[termId] = length + 2;
+		}
+	}
+
+	private int compareFrequency(int firstTermId, int secondTermId) {
+		int diff = Long.compare(totalTermFreqs[firstTermId], totalTermFreqs[secondTermId]);
+		return (diff != 0) ? diff : terms.compare(firstTermId, secondTermId);
+	}
+
+	private void siftUp(int[] heap, int i) {
+		while (i > 0 && compareFrequency(heap[i], heap[(i - 1) / 2]) < 0) {
+			swap(heap, i, (i - 1) / 2);
+			i = (i - 1) / 2;
+		}
+	}
+
+	private void siftDown(int[] heap, int size) {
+		int i = 0;
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && compareFrequency(heap[child + 1], heap[child]) < 0) {
+				child++;
+			}
+
+			if (compareFrequency(heap[i], heap[child]) <= 0) {
+				return;
+			}
+
+			swap(heap, i, child);
+			i = child;
+		}
+	}
+
+	private static void swap(int[] array, int i, int j) {
+		int tmp = array[i];
+		array[i] = array[j];
+		array[j] = tmp;
+	}
+
+	/**
+	 * Lucene's SmallFloat.floatToByte315, the length norm encoding of the default similarity.
+	 */
+	private static byte floatToByte315(float f) {
+		int bits = Float.floatToRawIntBits(f);
+		int smallfloat = bits >> (24 - 3);
+		if (smallfloat <= ((63 - 15) << 3)) {
+			return (bits <= 0) ? (byte) 0 : (byte) 1;
+		}
+
+		if (smallfloat >= ((63 - 15) << 3) + 0x100) {
+			return -1;
+		}
+
+		return (byte) (smallfloat - ((63 - 15) << 3));
+	}
+
+	private static float byte315ToFloat(byte b) {
+		if (b == 0) {
+			return 0.0f;
+		}
+
+		int bits = (b & 0xff) << (24 - 3);
+		bits += (63 - 15) << 24;
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * The top ranked documents of a query, by score (descending) and then by external ID (ascending).
+	 */
+	public static class TopHits {
+
+		private final float[] scores;
+		private final int[] ids;
+		private int size = 0;
+
+		TopHits(int k) {
+			this.scores = new float[k];
+			this.ids = new int[k];
+		}
+
+		/**
+		 * @return the external IDs of the documents, by rank.
+		 */
+		public int[] ranked() {
+			int[] ranked = new int[size];
+			// Pop the min heap, from the least ranked document to the top ranked one.
+			for (int i = size - 1; i >= 0; i--) {
+				ranked[i] = ids[0];
+				scores[0] = scores[i];
+				ids[0] = ids[i];
+				siftDown(i);
+			}
+
+			size = 0;
+			return ranked;
+		}
+
+		void collect(float score, int id) {
+			if (size < ids.length) {
+				scores[size] = score;
+				ids[size] = id;
+				siftUp(size++);
+			} else if (ids.length > 0 && lessThan(scores[0], ids[0], score, id)) {
+				scores[0] = score;
+				ids[0] = id;
+				siftDown(size);
+			}
+		}
+
+		private static boolean lessThan(float firstScore, int firstId, float secondScore, int secondId) {
+			int diff = Float.compare(firstScore, secondScore);
+			return (diff != 0) ? diff < 0 : firstId > secondId;
+		}
+
+		private void siftUp(int i) {
+			while (i > 0 && lessThan(scores[i], ids[i], scores[(i - 1) / 2], ids[(i - 1) / 2])) {
+				swap(i, (i - 1) / 2);
+				i = (i - 1) / 2;
+			}
+		}
+
+		private void siftDown(int heapSize) {
+			int i = 0;
+			while (2 * i + 1 < heapSize) {
+				int child = 2 * i + 1;
+				if (child + 1 < heapSize && lessThan(scores[child + 1], ids[child + 1], scores[child], ids[child])) {
+					child++;
+				}
+
+				if (!lessThan(scores[child], ids[child], scores[i], ids[i])) {
+					return;
+				}
+
+				swap(i, child);
+				i = child;
+			}
+		}
+
+		private void swap(int i, int j) {
+			float score = scores[i];
+			scores[i] = scores[j];
+			scores[j] = score;
+			int id = ids[i];
+			ids[i] = ids[j];
+			ids[j] = id;
+		}
+	}
+
+	/**
+	 * A node of a parsed query, iterating its matching documents in order and scoring them like the Lucene query weights and scorers.
+	 * A node is searched once.
+	 */
+	public abstract static class QueryNode {
+
+		protected int doc = -1;
+
+		abstract float getValueForNormalization();
+
+		abstract void normalize(float queryNorm);
+
+		abstract int nextDoc();
+
+		abstract float score();
+
+		/**
+		 * @param target the document to advance to.
+		 * @return the first matching document not before the target (the current document if it is not before the target).
+		 */
+		abstract int advance(int target);
+	}
+
+	private class TermNode extends QueryNode {
+
+		private final int termId;
+		private final int[] termPostings;
+		private final int length;
+		private final float idf;
+		private float queryWeight;
+		private float value;
+		private int position = -2;
+
+		/**
+		 * @param termId the term ID; -1 for a term missing from the index (which still takes part in the query normalization).
+		 */
+		TermNode(int termId) {
+			this.termId = termId;
+			this.termPostings = (termId < 0) ? null : postings[termId];
+			this.length = (termId < 0) ? 0 : postingsLengths[termId];
+			int docFreq = length / 2;
+			this.idf = (float) (Math.log(numDocs / (double) (docFreq + 1)) + 1.0);
+			this.queryWeight = idf;
+		}
+
+		@Override
+		float getValueForNormalization() {
+			return queryWeight * queryWeight;
+		}
+
+		@Override
+		void normalize(float queryNorm) {
+			queryWeight *= queryNorm;
+			value = queryWeight * idf;
+		}
+
+		@Override
+		int nextDoc() {
+			position += 2;
+			doc = (position < length) ? termPostings[position] : NO_MORE_DOCS;
+			return doc;
+		}
+
+		@Override
+		int advance(int target) {
+			if (doc >= target) {
+				return doc;
+			}
+
+			// Binary search the pairs after the current one for the first document not before the target.
+			int low = (position + 2) / 2;
+			int high = length / 2;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (termPostings[mid * 2] < target) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			position = low * 2;
+			doc = (position < length) ? termPostings[position] : NO_MORE_DOCS;
+			return doc;
+		}
+
+		@Override
+		float score() {
+			return (float) Math.sqrt(termPostings[position + 1]) * value * NORM_TABLE[norms[doc] & 0xFF];
+		}
+	}
+
+	private static class BooleanNode extends QueryNode {
+
+		/**
+		 * The scoring (required and optional) clauses, in the query order.
+		 */
+		private final QueryNode[] clauses;
+		private final QueryNode[] required;
+		private final QueryNode[] optional;
+		private final QueryNode[] prohibited;
+		private final float[] coords;
+
+		BooleanNode(List<QueryNode> clauses, List<QueryNode> required, List<QueryNode> optional, List<QueryNode> prohibited) {
+			this.clauses = clauses.toArray(new QueryNode[clauses.size()]);
+			this.required = required.toArray(new QueryNode[required.size()]);
+			this.optional = optional.toArray(new QueryNode[optional.size()]);
+			this.prohibited = prohibited.toArray(new QueryNode[prohibited.size()]);
+			int maxCoord = this.clauses.length;
+			this.coords = new float[maxCoord + 1];
+			for (int overlap = 0; overlap <= maxCoord; overlap++) {
+				coords[overlap] = (maxCoord == 1) ? 1.0f : overlap / (float) maxCoord;
+			}
+		}
+
+		@Override
+		float getValueForNormalization() {
+			float sum = 0.0f;
+			for (QueryNode clause : clauses) {
+				sum += clause.getValueForNormalization();
+			}
+
+			return sum;
+		}
+
+		@Override
+		void normalize(float queryNorm) {
+			for (QueryNode clause : clauses) {
+				clause.normalize(queryNorm);
+			}
+		}
+
+		@Override
+		int nextDoc() {
+			return advance(doc + 1);
+		}
+
+		@Override
+		int advance(int target) {
+			if (doc >= target) {
+				return doc;
+			}
+
+			while (true) {
+				int candidate = (required.length > 0) ? conjunction(target) : disjunction(target);
+				if (candidate == NO_MORE_DOCS || !isProhibited(candidate)) {
+					doc = candidate;
+					if (required.length > 0 && candidate != NO_MORE_DOCS) {
+						for (QueryNode clause : optional) {
+							if (clause.doc < candidate) {
+								clause.advance(candidate);
+							}
+						}
+					}
+
+					return doc;
+				}
+
+				target = candidate + 1;
+			}
+		}
+
+		@Override
+		float score() {
+			if (required.length == 0) {
+				int matched = 0;
+				double sum = 0;
+				for (QueryNode clause : optional) {
+					if (clause.doc == doc) {
+						sum += clause.score();
+						matched++;
+					}
+				}
+
+				return (float) sum * coords[matched];
+			}
+
+			float requiredScore = sum(required);
+			if (optional.length == 0) {
+				return requiredScore * coords[required.length];
+			}
+
+			int matched = 0;
+			double sum = 0;
+			for (QueryNode clause : optional) {
+				if (clause.doc == doc) {
+					sum += clause.score();
+					matched++;
+				}
+			}
+
+			return (matched == 0) ? requiredScore * coords[required.length] : (requiredScore + (float) sum) * coords[required.length + matched];
+		}
+
+		private float sum(QueryNode[] matching) {
+			double sum = 0;
+			for (QueryNode clause : matching) {
+				sum += clause.score();
+			}
+
+			return (float) sum;
+		}
+
+		private int conjunction(int target) {
+			int candidate = target;
+			int agreeing = 0;
+			for (int i = 0; agreeing < required.length; i = (i + 1) % required.length) {
+				int clauseDoc = required[i].advance(candidate);
+				if (clauseDoc == NO_MORE_DOCS) {
+					return NO_MORE_DOCS;
+				}
+
+				if (clauseDoc == candidate) {
+					agreeing++;
+				} else {
+					candidate = clauseDoc;
+					agreeing = 1;
+				}
+			}
+
+			return candidate;
+		}
+
+		private int disjunction(int target) {
+			int candidate = NO_MORE_DOCS;
+			for (QueryNode clause : optional) {
+				candidate = Math.min(candidate, (clause.doc < target) ? clause.advance(target) : clause.doc);
+			}
+
+			return candidate;
+		}
+
+		private boolean isProhibited(int candidate) {
+			for (QueryNode clause : prohibited) {
+				if ((clause.doc < candidate ? clause.advance(candidate) : clause.doc) == candidate) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * The accumulators of a group of queries searched together by {@link MemoryIndex#search(QueryNode[], int)}.
+	 * The accumulators of a document are adjacent (document major, query minor), so the updates of a posting stay in the same cache lines.
+	 * The accumulators are cleared once the group is collected, and reused by the following groups of the thread.
+	 */
+	private class SharedScan {
+
+		static final int BYTES_PER_ACCUMULATOR = 4 + 8 + 8;
+		private static final int OPTIONAL = 0;
+		private static final int REQUIRED = 1;
+		private static final int PROHIBITED = 2;
+		private static final int MAX_CLAUSES = 0x7FFF;
+		private static final int REQUIRED_MATCH = 1 << 16;
+		private static final int PROHIBITED_MATCH = 1 << 31;
+
+		private final int numDocs;
+		private final int groupSize;
+		/**
+		 * The matching clauses of each query and document: the optional clauses (low 16 bits), the required clauses
+		 * (next 15 bits), and whether a prohibited clause matches (the sign bit).
+		 */
+		private final int[] matches;
+		private final double[] optionalSums;
+		private final double[] requiredSums;
+		private final int[][] touchedDocs;
+		private final int[] touchedCounts;
+		private long[] entryKeys = new long[64];
+		private int[] entrySlots = new int[64];
+		private int[] entryRoles = new int[64];
+		private float[] entryValues = new float[64];
+		private int entryCount = 0;
+
+		SharedScan(int groupSize) {
+			this.numDocs = MemoryIndex.this.numDocs;
+			this.groupSize = groupSize;
+			this.matches = new int[numDocs * groupSize];
+			this.optionalSums = new double[numDocs * groupSize];
+			this.requiredSums = new double[numDocs * groupSize];
+			this.touchedDocs = new int[groupSize][16];
+			this.touchedCounts = new int[groupSize];
+		}
+
+		/**
+		 * @param group the normalized queries of the group, by slot.
+		 * @param hits the top documents of each of the queries, by slot.
+		 * @param size the amount of queries in the group.
+		 */
+		void search(QueryNode[] group, TopHits[] hits, int size) {
+			// The term clauses of the group, ordered by term, so each term is scanned once for all of its clauses.
+			entryCount = 0;
+			for (int slot = 0; slot < size; slot++) {
+				if (group[slot] instanceof TermNode) {
+					addEntry((TermNode) group[slot], slot, OPTIONAL);
+				} else {
+					BooleanNode bool = (BooleanNode) group[slot];
+					for (QueryNode clause : bool.required) {
+						addEntry((TermNode) clause, slot, REQUIRED);
+					}
+
+					for (QueryNode clause : bool.optional) {
+						addEntry((TermNode) clause, slot, OPTIONAL);
+					}
+
+					for (QueryNode clause : bool.prohibited) {
+						addEntry((TermNode) clause, slot, PROHIBITED);
+					}
+				}
+			}
+
+			Arrays.sort(entryKeys, 0, entryCount);
+			int[] runSlots = new int[entryCount];
+			int[] runRoles = new int[entryCount];
+			float[] runValues = new float[entryCount];
+			for (int start = 0; start < entryCount;) {
+				int termId = (int) (entryKeys[start] >>> 32);
+				int end = start;
+				for (; end < entryCount && (int) (entryKeys[end] >>> 32) == termId; end++) {
+					int entry = (int) entryKeys[end];
+					runSlots[end - start] = entrySlots[entry];
+					runRoles[end - start] = entryRoles[entry];
+					runValues[end - start] = entryValues[entry];
+				}
+
+				scan(termId, runSlots, runRoles, runValues, end - start);
+				start = end;
+			}
+
+			for (int slot = 0; slot < size; slot++) {
+				collect(group[slot], slot, hits[slot]);
+			}
+		}
+
+		private void addEntry(TermNode term, int slot, int role) {
+			if (term.termId < 0) {
+				return;
+			}
+
+			if (entryCount == entryKeys.length) {
+				entryKeys = Arrays.copyOf(entryKeys, entryCount * 2);
+				entrySlots = Arrays.copyOf(entrySlots, entryCount * 2);
+				entryRoles = Arrays.copyOf(entryRoles, entryCount * 2);
+				entryValues = Arrays.copyOf(entryValues, entryCount * 2);
+			}
+
+			entryKeys[entryCount] = ((long) term.termId << 32) | entryCount;
+			entrySlots[entryCount] = slot;
+			entryRoles[entryCount] = role;
+			entryValues[entryCount] = term.value;
+			entryCount++;
+		}
+
+		private void scan(int termId, int[] slots, int[] roles, float[] values, int count) {
+			int[] termPostings = postings[termId];
+			int length = postingsLengths[termId];
+			for (int i = 0; i < length; i += 2) {
+				int doc = termPostings[i];
+				float tf = (float) Math.sqrt(termPostings[i + 1]);
+				float norm = NORM_TABLE[norms[doc] & 0xFF];
+				int base = doc * groupSize;
+				for (int e = 0; e < count; e++) {
+					int slot = slots[e];
+					int acc = base + slot;
+					int match = matches[acc];
+					if (match == 0) {
+						touch(slot, doc);
+					}
+
+					// The same float operations order as the term score of the per query search.
+					switch (roles[e]) {
+					case OPTIONAL:
+						optionalSums[acc] += tf * values[e] * norm;
+						matches[acc] = match + 1;
+						break;
+					case REQUIRED:
+						requiredSums[acc] += tf * values[e] * norm;
+						matches[acc] = match + REQUIRED_MATCH;
+						break;
+					default:
+						matches[acc] = match | PROHIBITED_MATCH;
+						break;
+					}
+				}
+			}
+		}
+
+		private void touch(int slot, int doc) {
+			int count = touchedCounts[slot];
+			if (count == touchedDocs[slot].length) {
+				touchedDocs[slot] = Arrays.copyOf(touchedDocs[slot], count * 2);
+			}
+
+			touchedDocs[slot][count] = doc;
+			touchedCounts[slot] = count + 1;
+		}
+
+		/**
+		 * The method scores the documents matched by the query, like {@link BooleanNode#score()}, and clears their accumulators.
+		 */
+		private void collect(QueryNode query, int slot, TopHits hits) {
+			int requiredCount = 0;
+			int optionalCount = 1;
+			float[] coords = { 1.0f, 1.0f };
+			if (query instanceof BooleanNode) {
+				BooleanNode bool = (BooleanNode) query;
+				requiredCount = bool.required.length;
+				optionalCount = bool.optional.length;
+				coords = bool.coords;
+			}
+
+			int[] docs = touchedDocs[slot];
+			for (int t = 0; t < touchedCounts[slot]; t++) {
+				int doc = docs[t];
+				int acc = doc * groupSize + slot;
+				int match = matches[acc];
+				double optionalSum = optionalSums[acc];
+				double requiredSum = requiredSums[acc];
+				matches[acc] = 0;
+				optionalSums[acc] = 0;
+				requiredSums[acc] = 0;
+				int optionalMatched = match & 0xFFFF;
+				int requiredMatched = (match >>> 16) & MAX_CLAUSES;
+				if ((match & PROHIBITED_MATCH) != 0) {
+					continue;
+				}
+
+				float score;
+				if (requiredCount == 0) {
+					if (optionalMatched == 0) {
+						continue;
+					}
+
+					score = (float) optionalSum * coords[optionalMatched];
+				} else {
+					if (requiredMatched != requiredCount) {
+						continue;
+					}
+
+					float requiredScore = (float) requiredSum;
+					if (optionalCount == 0 || optionalMatched == 0) {
+						score = requiredScore * coords[requiredCount];
+					} else {
+						score = (requiredScore + (float) optionalSum) * coords[requiredCount + optionalMatched];
+					}
+				}
+
+				hits.collect(score, externalIds[doc]);
+			}
+
+			touchedCounts[slot] = 0;
+		}
+	}
+
+	/**
+	 * A parser of the classic Lucene query syntax, for the normalized query text (letters, digits, '-' and whitespace).
+	 * The clauses are combined like Lucene's QueryParser with the default OR operator: "-" and NOT prohibit the following clause,
+	 * and AND makes both of its clauses required.
+	 */
+	private class QuerySyntax {
+
+		private static final int CONJ_NONE = 0;
+		private static final int CONJ_AND = 1;
+		private static final int CONJ_OR = 2;
+		private static final int MOD_NONE = 0;
+		private static final int MOD_NOT = 1;
+		private static final int SHOULD = 0;
+		private static final int MUST = 1;
+		private static final int MUST_NOT = 2;
+
+		private final String text;
+		private final Tokenizer tokenizer = new Tokenizer();
+		private final List<QueryNode> clauses = new ArrayList<>();
+		/**
+		 * The occurrence (SHOULD, MUST or MUST_NOT) of each clause, by the clause index.
+		 */
+		private int[] occurs = new int[8];
+		private int occursCount = 0;
+		private int position = 0;
+		private String token;
+
+		QuerySyntax(String text) {
+			this.text = text;
+		}
+
+		QueryNode parse() {
+			if (!nextToken()) {
+				return null;
+			}
+
+			int mods = modifiers();
+			addClause(CONJ_NONE, mods, clause());
+			while (token != null) {
+				int conj = conjunction();
+				mods = modifiers();
+				addClause(conj, mods, clause());
+			}
+
+			List<QueryNode> scoring = new ArrayList<>();
+			List<QueryNode> required = new ArrayList<>();
+			List<QueryNode> optional = new ArrayList<>();
+			List<QueryNode> prohibited = new ArrayList<>();
+			for (int i = 0; i < occursCount; i++) {
+				int occur = occurs[i];
+				if (occur == MUST_NOT) {
+					prohibited.add(clauses.get(i));
+				} else {
+					scoring.add(clauses.get(i));
+					(occur == MUST ? required : optional).add(clauses.get(i));
+				}
+			}
+
+			return clauses.isEmpty() ? null : new BooleanNode(scoring, required, optional, prohibited);
+		}
+
+		private int conjunction() {
+			if ("AND".equals(token)) {
+				nextToken();
+				return CONJ_AND;
+			} else if ("OR".equals(token)) {
+				nextToken();
+				return CONJ_OR;
+			}
+
+			return CONJ_NONE;
+		}
+
+		private int modifiers() {
+			if ("-".equals(token) || "NOT".equals(token)) {
+				nextToken();
+				return MOD_NOT;
+			}
+
+			return MOD_NONE;
+		}
+
+		private QueryNode clause() {
+			if (token == null || "-".equals(token) || "AND".equals(token) || "OR".equals(token) || "NOT".equals(token)) {
+				throw new IllegalArgumentException("Cannot parse '" + text + "'.");
+			}
+
+			QueryNode clause = analyze(token);
+			nextToken();
+			return clause;
+		}
+
+		/**
+		 * The clause occurrence rules of Lucene's QueryParserBase.addClause (with the OR default operator).
+		 */
+		private void addClause(int conj, int mods, QueryNode clause) {
+			if (occursCount > 0 && conj == CONJ_AND && occurs[occursCount - 1] != MUST_NOT) {
+				occurs[occursCount - 1] = MUST;
+			}
+
+			if (clause == null) {
+				return;
+			}
+
+			if (occursCount == occurs.length) {
+				occurs = Arrays.copyOf(occurs, occursCount * 2);
+			}
+
+			clauses.add(clause);
+			occurs[occursCount++] = (mods == MOD_NOT) ? MUST_NOT : (conj == CONJ_AND ? MUST : SHOULD);
+		}
+
+		/**
+		 * @return a clause of the query analyzer tokens of the term; null if no token is left.
+		 */
+		private QueryNode analyze(String term) {
+			List<QueryNode> tokens = new ArrayList<>();
+			tokenizer.reset(term);
+			while (tokenizer.next()) {
+				if (stopWords.find(tokenizer.buffer, 0, tokenizer.length) < 0) {
+					int termId = terms.find(tokenizer.buffer, 0, tokenizer.length);
+					if (termId < 0 || termId >= queryStopWords.length || !queryStopWords[termId]) {
+						tokens.add(new TermNode(termId));
+					}
+				}
+			}
+
+			if (tokens.size() <= 1) {
+				return tokens.isEmpty() ? null : tokens.get(0);
+			}
+
+			return new BooleanNode(tokens, new ArrayList<>(), tokens, new ArrayList<>());
+		}
+
+		/**
+		 * The method reads the next token: a lone "-" followed by whitespace is a term (analyzed to nothing),
+		 * a "-" followed by a term is a modifier, and otherwise a token spans to the next whitespace.
+		 * @return true if a token was read.
+		 */
+		private boolean nextToken() {
+			while (position < text.length() && isWhitespace(text.charAt(position))) {
+				position++;
+			}
+
+			if (position == text.length()) {
+				token = null;
+				return false;
+			}
+
+			int start = position;
+			if (text.charAt(position) == '-') {
+				position++;
+				if (position < text.length() && isWhitespace(text.charAt(position))) {
+					position++;
+					token = "- ";
+				} else {
+					token = "-";
+				}
+
+				return true;
+			}
+
+			while (position < text.length() && !isWhitespace(text.charAt(position))) {
+				position++;
+			}
+
+			token = text.substring(start, position);
+			return true;
+		}
+
+		private boolean isWhitespace(char c) {
+			return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\u3000';
+		}
+	}
+
+	/**
+	 * Splits text to lower cased tokens of letters and digits, as the standard tokenizer does for the normalized text.
+	 * Tokens longer than the standard tokenizer maximal token length are skipped.
+	 */
+	private static class Tokenizer {
+
+		private String text;
+		private int position;
+		private char[] buffer = new char[MAX_TOKEN_LENGTH];
+		private int length;
+
+		Tokenizer reset(String text) {
+			this.text = text;
+			this.position = 0;
+			return this;
+		}
+
+		boolean next() {
+			while (true) {
+				while (position < text.length() && !Character.isLetterOrDigit(text.charAt(position))) {
+					position++;
+				}
+
+				if (position == text.length()) {
+					return false;
+				}
+
+				length = 0;
+				while (position < text.length() && Character.isLetterOrDigit(text.charAt(position))) {
+					if (length < buffer.length) {
+						buffer[length] = Character.toLowerCase(text.charAt(position));
+					}
+
+					length++;
+					position++;
+				}
+
+				if (length <= MAX_TOKEN_LENGTH) {
+					return true;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,188 @@
+package ir.websearch.algo.core;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ir.websearch.algo.core.SearchMetrics.Phase;
+import ir.websearch.algo.query.Query;
+
+/**
+ * Executes a query set concurrently and writes the results to a sink in the original query order, as soon as they are ready.
+ * The amount of queries in flight is bounded, so the results held in memory do not grow with the query set.
+ * The queries are searched one by one, or in batches of consecutive queries searched together (see {@link BatchSearcher}).
+ * The queries searched one by one may share a time budget for the whole query set (see {@link BudgetedSearcher}).
+ */
+class QueryBatch {
+
+	private static final int QUERIES_IN_FLIGHT_PER_THREAD = 4;
+
+	/**
+	 * The search of a single query, executed concurrently with other queries.
+	 */
+	interface QuerySearcher {
+
+		/**
+		 * @param query the query to search.
+		 * @return the external IDs of the retrieved documents, by rank.
+		 * @throws Exception
+		 */
+		int[] search(Query query) throws Exception;
+	}
+
+	/**
+	 * The search of a single query within a time budget, executed concurrently with other queries.
+	 */
+	interface BudgetedSearcher {
+
+		/**
+		 * @param query the query to search.
+		 * @param budgetNanos the time left for the query, in nanoseconds; {@link SearchSession#NO_BUDGET} for no limit.
+		 * @return the retrieved documents, which are partial if the budget ran out.
+		 * @throws Exception
+		 */
+		SearchResult search(Query query, long budgetNanos) throws Exception;
+	}
+
+	/**
+	 * The search of a batch of queries together, executed concurrently with other batches.
+	 */
+	interface BatchSearcher {
+
+		/**
+		 * @param batch the queries to search.
+		 * @return the external IDs of the retrieved documents of each of the queries, by rank.
+		 * @throws Exception
+		 */
+		int[][] search(List<Query> batch) throws Exception;
+	}
+
+	/**
+	 * @param queries the query set.
+	 * @param threads the amount of threads executing the queries.
+	 * @param searcher the search of a single query.
+	 * @param sink the consumer of the search results.
+	 * @param metrics the run metrics, recording the output time.
+	 * @throws Exception if any of the queries failed.
+	 */
+	static void search(Collection<Query> queries, int threads, QuerySearcher searcher, ResultSink sink, SearchMetrics metrics) throws Exception {
+		searchBatches(queries, threads, 1, batch -> new int[][] { searcher.search(batch.get(0)) }, sink, metrics);
+	}
+
+	/**
+	 * The method searches the query set within a time budget for the whole set: each query is given the time left
+	 * until the budget runs out. Once it does, the remaining queries return (empty) partial results right away.
+	 * @param queries the query set.
+	 * @param threads the amount of threads executing the queries.
+	 * @param budgetNanos the time budget of the query set, in nanoseconds; {@link SearchSession#NO_BUDGET} for no limit.
+	 * @param searcher the search of a single query.
+	 * @param sink the consumer of the search results.
+	 * @param metrics the run metrics, recording the output time.
+	 * @throws Exception if any of the queries failed.
+	 */
+	static void search(Collection<Query> queries, int threads, long budgetNanos, BudgetedSearcher searcher, ResultSink sink, 
+			SearchMetrics metrics) throws Exception {
+		long deadline = System.nanoTime() + budgetNanos;
+		run(queries, threads, 1, batch -> new SearchResult[] { 
+				searcher.search(batch.get(0), (budgetNanos == SearchSession.NO_BUDGET) ? budgetNanos : deadline - System.nanoTime()) }, 
+				sink, metrics);
+	}
+
+	/**
+	 * The method splits the query set into batches of consecutive queries, and searches the batches concurrently.
+	 * @param queries the query set.
+	 * @param threads the amount of threads executing the batches.
+	 * @param batchSize the maximal amount of queries of a batch.
+	 * @param searcher the search of a batch of queries.
+	 * @param sink the consumer of the search results.
+	 * @param metrics the run metrics, recording the output time.
+	 * @throws Exception if any of the batches failed.
+	 */
+	static void searchBatches(Collection<Query> queries, int threads, int batchSize, BatchSearcher searcher, ResultSink sink, 
+			SearchMetrics metrics) throws Exception {
+		run(queries, threads, batchSize, batch -> {
+			int[][] docIds = searcher.search(batch);
+			SearchResult[] results = new SearchResult[docIds.length];
+			for (int i = 0; i < docIds.length; i++) {
+				results[i] = new SearchResult(docIds[i], false);
+			}
+
+			return results;
+		}, sink, metrics);
+	}
+
+	private static void run(Collection<Query> queries, int threads, int batchSize, ResultSearcher searcher, ResultSink sink, 
+			SearchMetrics metrics) throws Exception {
+		int maxInFlight = threads * QUERIES_IN_FLIGHT_PER_THREAD;
+		Deque<List<Query>> inFlightBatches = new ArrayDeque<>(maxInFlight);
+		Deque<Future<SearchResult[]>> inFlightResults = new ArrayDeque<>(maxInFlight);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Query> batch = new ArrayList<>(batchSize);
+			for (Query query : queries) {
+				batch.add(query);
+				if (batch.size() < batchSize) {
+					continue;
+				}
+
+				if (inFlightResults.size() == maxInFlight) {
+					writeResults(inFlightBatches.poll(), getResult(inFlightResults.poll()), sink, metrics);
+				}
+
+				submit(batch, searcher, executor, inFlightBatches, inFlightResults);
+				batch = new ArrayList<>(batchSize);
+			}
+
+			if (!batch.isEmpty()) {
+				submit(batch, searcher, executor, inFlightBatches, inFlightResults);
+			}
+
+			while (!inFlightResults.isEmpty()) {
+				writeResults(inFlightBatches.poll(), getResult(inFlightResults.poll()), sink, metrics);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void submit(List<Query> batch, ResultSearcher searcher, ExecutorService executor, Deque<List<Query>> inFlightBatches,
+			Deque<Future<SearchResult[]>> inFlightResults) {
+		inFlightBatches.add(batch);
+		inFlightResults.add(executor.submit(() -> searcher.search(batch)));
+	}
+
+	private static void writeResults(List<Query> batch, SearchResult[] results, ResultSink sink, SearchMetrics metrics) throws IOException {
+		long start = System.nanoTime();
+		for (int i = 0; i < batch.size(); i++) {
+			int[] docIds = results[i].getDocIds();
+			sink.write(batch.get(i).getId(), docIds, docIds.length, results[i].isPartial());
+		}
+
+		metrics.addTime(Phase.OUTPUT, System.nanoTime() - start);
+	}
+
+	/**
+	 * The search of a batch of queries, by any of the searchers.
+	 */
+	private interface ResultSearcher {
+
+		SearchResult[] search(List<Query> batch) throws Exception;
+	}
+
+	private static <T> T getResult(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw (cause instanceof Exception) ? (Exception) cause : e;
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package ir.websearch.algo.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Compiles query texts into lucene queries over one or more index fields, each with its own boost.
+ * <p>
+ * The text is parsed and analyzed once, against the first field, and the parsed query is then copied to the other fields
+ * by replacing the field of its terms. The query analyzer treats all the fields alike, hence the copies are the same as
+ * parsing the text again for each field. A query of several fields matches any of them (a SHOULD clause per field).
+ * <p>
+ * The compiled queries are kept in a bounded LRU cache, keyed by the query text (which is already normalized by the
+ * {@link ir.websearch.algo.query.QueriesParser}), so a repeated query is not parsed again. The compiled queries are shared
+ * between the searching threads, and must not be modified. The compiler is bound to its analyzer: once the query
+ * analyzer changes (e.g., the collection stop words), a new compiler, with an empty cache, replaces it.
+ * The compiler is thread safe.
+ */
+class QueryCompiler {
+
+	private final Analyzer queyrAnalyzer;
+	private final String[] fields;
+	private final float[] boosts;
+	private final ThreadLocal<QueryParser> parsers;
+	private final Map<String, Query> cache;
+
+	/**
+	 * @param queyrAnalyzer the query search analyzer.
+	 * @param fieldBoosts the queried fields and their boosts, in clause order.
+	 * @param cacheSize the maximal amount of compiled queries kept; 0 disables the cache.
+	 */
+	QueryCompiler(Analyzer queyrAnalyzer, Map<String, Float> fieldBoosts, int cacheSize) {
+		if (fieldBoosts.isEmpty()) {
+			throw new IllegalArgumentException("A query requires at least one field.");
+		}
+
+		this.queyrAnalyzer = queyrAnalyzer;
+		this.fields = fieldBoosts.keySet().toArray(new String[fieldBoosts.size()]);
+		this.boosts = new float[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			boosts[i] = fieldBoosts.get(fields[i]);
+		}
+
+		this.parsers = ThreadLocal.withInitial(() -> new QueryParser(fields[0], queyrAnalyzer));
+		this.cache = (cacheSize == 0) ? null : Collections.synchronizedMap(new LinkedHashMap<String, Query>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+				return size() > cacheSize;
+			}
+		});
+	}
+
+	/**
+	 * The method compiles a query text, or returns its cached compilation.
+	 * @param text the normalized query text.
+	 * @return the lucene query. Must not be modified.
+	 * @throws ParseException
+	 */
+	Query compile(String text) throws ParseException {
+		Query query = (cache == null) ? null : cache.get(text);
+		if (query == null) {
+			query = generate(text);
+			if (cache != null) {
+				cache.put(text, query);
+			}
+		}
+
+		return query;
+	}
+
+	private Query generate(String text) throws ParseException {
+		Query parsed = parsers.get().parse(text);
+		if (fields.length == 1) {
+			return boost(parsed, boosts[0]);
+		}
+
+		// All the copies are made before any of them is boosted, since a copy carries the boost of the parsed query.
+		Query[] fieldQueries = new Query[fields.length];
+		fieldQueries[0] = parsed;
+		for (int i = 1; i < fields.length; i++) {
+			fieldQueries[i] = copyToField(parsed, fields[i]);
+			if (fieldQueries[i] == null) {
+				// A query of a clause the copy does not support is parsed again for the field.
+				fieldQueries[i] = new QueryParser(fields[i], queyrAnalyzer).parse(text);
+			}
+		}
+
+		BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
+		for (int i = 0; i < fields.length; i++) {
+			queryBuilder.add(boost(fieldQueries[i], boosts[i]), BooleanClause.Occur.SHOULD);
+		}
+
+		return queryBuilder.build();
+	}
+
+	private static Query boost(Query query, float boost) {
+		if (boost != 1f) {
+			query.setBoost(query.getBoost() * boost);
+		}
+
+		return query;
+	}
+
+	/**
+	 * The method copies a parsed query to another field.
+	 * @param query the parsed query.
+	 * @param field the field of the copy.
+	 * @return the copy; null if the query has a clause other than the term, phrase and boolean clauses of the query parser.
+	 */
+	private static Query copyToField(Query query, String field) {
+		Query copy;
+		if (query instanceof TermQuery) {
+			copy = new TermQuery(new Term(field, ((TermQuery) query).getTerm().bytes()));
+		} else if (query instanceof PhraseQuery) {
+			PhraseQuery phrase = (PhraseQuery) query;
+			PhraseQuery.Builder phraseBuilder = new PhraseQuery.Builder();
+			phraseBuilder.setSlop(phrase.getSlop());
+			Term[] terms = phrase.getTerms();
+			int[] positions = phrase.getPositions();
+			for (int i = 0; i < terms.length; i++) {
+				phraseBuilder.add(new Term(field, terms[i].bytes()), positions[i]);
+			}
+
+			copy = phraseBuilder.build();
+		} else if (query instanceof BooleanQuery) {
+			BooleanQuery bool = (BooleanQuery) query;
+			BooleanQuery.Builder boolBuilder = new BooleanQuery.Builder();
+			boolBuilder.setDisableCoord(bool.isCoordDisabled());
+			boolBuilder.setMinimumNumberShouldMatch(bool.getMinimumNumberShouldMatch());
+			for (BooleanClause clause : bool.clauses()) {
+				Query clauseCopy = copyToField(clause.getQuery(), field);
+				if (clauseCopy == null) {
+					return null;
+				}
+
+				boolBuilder.add(clauseCopy, clause.getOccur());
+			}
+
+			copy = boolBuilder.build();
+		} else {
+			return null;
+		}
+
+		copy.setBoost(query.getBoost());
+		return copy;
+	}
+
+}
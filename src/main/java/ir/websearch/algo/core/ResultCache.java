@@ -0,0 +1,135 @@
+package ir.websearch.algo.core;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of query results: the ranked external document IDs, keyed by the query text, algorithm and amount of hits.
+ * <p>
+ * The cache belongs to an index generation. Once the searched index changes (a refreshed searcher) or the queries change
+ * (a new query compiler), the generation is advanced and all the entries are dropped. A result is cached only if no
+ * invalidation happened since its search started (see {@link #getGeneration()}), so a result of an older index is never cached.
+ * <p>
+ * The memory of the entries is estimated from the key length and the amount of IDs, plus a fixed overhead per entry.
+ * The cache is thread safe.
+ */
+class ResultCache {
+
+	/**
+	 * The approximate memory of an entry other than its key characters and IDs: the map entry, the key string and the IDs array headers.
+	 */
+	private static final int ENTRY_OVERHEAD_BYTES = 120;
+
+	private final int capacity;
+	private final LinkedHashMap<String, int[]> entries;
+	private long generation = 0;
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long invalidations = 0;
+
+	/**
+	 * @param capacity the maximal amount of cached results.
+	 */
+	ResultCache(int capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+				if (size() <= ResultCache.this.capacity) {
+					return false;
+				}
+
+				bytes -= sizeOf(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @param algorithm the retrieval algorithm name.
+	 * @param k the amount of desired documents.
+	 * @param text the normalized query text.
+	 * @return the cache key of the query.
+	 */
+	static String key(String algorithm, int k, String text) {
+		return new StringBuilder(algorithm.length() + text.length() + 8).append(algorithm).append('\t').append(k).append('\t')
+				.append(text).toString();
+	}
+
+	/**
+	 * @return the current generation, to be read before searching a query whose result is then cached.
+	 */
+	synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @param key the cache key of the query (see {@link #key(String, int, String)}).
+	 * @return a copy of the cached result; null if the result is not cached.
+	 */
+	synchronized int[] get(String key) {
+		int[] docIds = entries.get(key);
+		if (docIds == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return docIds.clone();
+	}
+
+	/**
+	 * The method caches a result, unless the cache was invalidated since the given generation.
+	 * @param key the cache key of the query (see {@link #key(String, int, String)}).
+	 * @param docIds the result, the external document IDs by rank. Copied by the cache.
+	 * @param searchGeneration the generation read before the query was searched.
+	 */
+	synchronized void put(String key, int[] docIds, long searchGeneration) {
+		if (searchGeneration != generation) {
+			return;
+		}
+
+		int[] previous = entries.put(key, docIds.clone());
+		if (previous != null) {
+			bytes -= sizeOf(key, previous);
+		}
+
+		bytes += sizeOf(key, docIds);
+	}
+
+	/**
+	 * The method drops all the cached results, and advances the generation.
+	 */
+	synchronized void invalidate() {
+		generation++;
+		invalidations++;
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * The method appends the cache statistics as a JSON object: the hits, misses, hit rate, invalidations,
+	 * amount of entries and their estimated memory.
+	 * @param json the buffer to append to.
+	 */
+	synchronized void appendStats(StringBuilder json) {
+		long lookups = hits + misses;
+		json.append("{ \"capacity\": ").append(capacity)
+			.append(", \"hits\": ").append(hits)
+			.append(", \"misses\": ").append(misses)
+			.append(", \"hitRate\": ").append(String.format(Locale.ROOT, "%.4f", (lookups == 0) ? 0.0 : (double) hits / lookups))
+			.append(", \"invalidations\": ").append(invalidations)
+			.append(", \"entries\": ").append(entries.size())
+			.append(", \"estimatedBytes\": ").append(bytes).append(" }");
+	}
+
+	private static long sizeOf(String key, int[] docIds) {
+		return ENTRY_OVERHEAD_BYTES + 2L * key.length() + 4L * docIds.length;
+	}
+
+}
@@ -0,0 +1,32 @@
+package ir.websearch.algo.core;
+
+import java.io.IOException;
+
+/**
+ * A consumer of the ranked results of the queries, called once per query as soon as its results are ready.
+ */
+public interface ResultSink {
+	
+	/**
+	 * The method consumes the ranked results of a query.
+	 * @param queryId the query ID.
+	 * @param docIds the external IDs of the retrieved documents, by rank. The array may be reused once the method returns.
+	 * @param count the amount of retrieved documents (a prefix of docIds).
+	 * @throws IOException
+	 */
+	public void write(int queryId, int[] docIds, int count) throws IOException;
+	
+	/**
+	 * The method consumes the ranked results of a query, which may be partial (see {@link SearchResult#isPartial()}).
+	 * By default, partial results are consumed like complete results.
+	 * @param queryId the query ID.
+	 * @param docIds the external IDs of the retrieved documents, by rank. The array may be reused once the method returns.
+	 * @param count the amount of retrieved documents (a prefix of docIds).
+	 * @param partial whether the search of the query was cut short by its time budget.
+	 * @throws IOException
+	 */
+	public default void write(int queryId, int[] docIds, int count, boolean partial) throws IOException {
+		write(queryId, docIds, count);
+	}
+
+}
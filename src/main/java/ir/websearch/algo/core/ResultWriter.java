@@ -0,0 +1,114 @@
+package ir.websearch.algo.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A {@link ResultSink} writing the results in printable formated lines (QueryID, DocID, Rank), 
+ * e.g. "q1,doc42,1". A query with no retrieved documents gets a single dummy line, e.g. "q1,dummy,1".
+ * The lines of a partial result (see {@link SearchResult#isPartial()}) are flagged by a fourth value, e.g. "q1,doc42,1,partial".
+ * The lines of each query are formatted into a reused character buffer, with no intermediate strings.
+ */
+public class ResultWriter implements ResultSink, Closeable {
+	
+	private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+	private static final char[] DOC_PREFIX = "doc".toCharArray();
+	private static final char[] DUMMY = "dummy".toCharArray();
+	private static final char[] PARTIAL_FLAG = ",partial".toCharArray();
+	private static final int MAX_INT_CHARS = 11;
+	
+	private final Writer writer;
+	private char[] buffer = new char[1024];
+	private int length = 0;
+	
+	/**
+	 * @param writer the writer to write the lines to. Should be buffered.
+	 */
+	public ResultWriter(Writer writer) {
+		this.writer = writer;
+	}
+	
+	@Override
+	public void write(int queryId, int[] docIds, int count) throws IOException {
+		write(queryId, docIds, count, false);
+	}
+	
+	@Override
+	public synchronized void write(int queryId, int[] docIds, int count, boolean partial) throws IOException {
+		length = 0;
+		if (count == 0) {
+			// No documents are retrieved for a query. Create dummy output.
+			appendLine(queryId, DUMMY, 0, false, 1, partial);
+		} else {
+			for (int rank = 1; rank <= count; rank++) {
+				appendLine(queryId, DOC_PREFIX, docIds[rank - 1], true, rank, partial);
+			}
+		}
+		
+		writer.write(buffer, 0, length);
+	}
+	
+	public void flush() throws IOException {
+		writer.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+	
+	private void appendLine(int queryId, char[] docPrefix, int docId, boolean appendDocId, int rank, boolean partial) {
+		ensureCapacity(1 + MAX_INT_CHARS + 1 + docPrefix.length + MAX_INT_CHARS + 1 + MAX_INT_CHARS + PARTIAL_FLAG.length 
+				+ LINE_SEPARATOR.length);
+		buffer[length++] = 'q';
+		appendInt(queryId);
+		buffer[length++] = ',';
+		append(docPrefix);
+		if (appendDocId) {
+			appendInt(docId);
+		}
+		
+		buffer[length++] = ',';
+		appendInt(rank);
+		if (partial) {
+			append(PARTIAL_FLAG);
+		}
+		
+		append(LINE_SEPARATOR);
+	}
+	
+	private void append(char[] chars) {
+		System.arraycopy(chars, 0, buffer, length, chars.length);
+		length += chars.length;
+	}
+	
+	private void appendInt(int value) {
+		long remaining = value;
+		if (remaining < 0) {
+			buffer[length++] = '-';
+			remaining = -remaining;
+		}
+		
+		int digits = 1;
+		for (long bound = 10; bound <= remaining; bound *= 10) {
+			digits++;
+		}
+		
+		for (int i = length + digits - 1; i >= length; i--) {
+			buffer[i] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+		}
+		
+		length += digits;
+	}
+	
+	private void ensureCapacity(int extra) {
+		if (length + extra > buffer.length) {
+			char[] newBuffer = new char[Math.max(buffer.length * 2, length + extra)];
+			System.arraycopy(buffer, 0, newBuffer, 0, length);
+			buffer = newBuffer;
+		}
+	}
+
+}
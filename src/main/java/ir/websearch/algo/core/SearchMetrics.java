@@ -0,0 +1,228 @@
+package ir.websearch.algo.core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Run metrics: the time spent in each phase, and the latency, hits and allocations of each query, and whether its result is partial.
+ * Recording is thread safe and cheap (no I/O), the metrics are written once the run is over.
+ * Times of phases running concurrently (e.g. the search of several queries) are summed across threads.
+ */
+public class SearchMetrics {
+
+	public enum Phase {
+		PARSE("parse"),
+		INDEX("index"),
+		MERGE("merge"),
+		STOP_WORDS("stopWords"),
+		QUERY_PARSE("queryParse"),
+		SEARCH("search"),
+		SORT("sort"),
+		OUTPUT("output");
+
+		private final String name;
+
+		private Phase(String name) {
+			this.name = name;
+		}
+	}
+
+	private static final int SLOWEST_QUERIES = 10;
+	/**
+	 * Bounds the memory of a long running search service; once reached, the oldest query metrics are dropped.
+	 */
+	private static final int MAX_RECORDED_QUERIES = 1 << 20;
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+	private final ConcurrentLinkedQueue<QueryMetrics> queries = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger recordedQueries = new AtomicInteger();
+	private volatile ResultCache resultCache = null;
+
+	public SearchMetrics() {
+		for (Phase phase : Phase.values()) {
+			phaseNanos.put(phase, new LongAdder());
+		}
+	}
+
+	/**
+	 * @param phase the run phase.
+	 * @param nanos time spent in the phase, in nanoseconds.
+	 */
+	public void addTime(Phase phase, long nanos) {
+		phaseNanos.get(phase).add(nanos);
+	}
+
+	/**
+	 * @param queryId the query ID.
+	 * @param latencyNanos the end to end latency of the query, in nanoseconds.
+	 * @param hits the amount of documents retrieved for the query.
+	 * @param allocatedBytes the bytes allocated while searching the query; negative if unavailable.
+	 */
+	public void recordQuery(int queryId, long latencyNanos, int hits, long allocatedBytes) {
+		recordQuery(queryId, latencyNanos, hits, allocatedBytes, false);
+	}
+
+	/**
+	 * @param queryId the query ID.
+	 * @param latencyNanos the end to end latency of the query, in nanoseconds.
+	 * @param hits the amount of documents retrieved for the query.
+	 * @param allocatedBytes the bytes allocated while searching the query; negative if unavailable.
+	 * @param partial whether the search of the query was cut short by its time budget.
+	 */
+	public void recordQuery(int queryId, long latencyNanos, int hits, long allocatedBytes, boolean partial) {
+		queries.add(new QueryMetrics(queryId, latencyNanos, hits, allocatedBytes, partial));
+		if (recordedQueries.incrementAndGet() > MAX_RECORDED_QUERIES && queries.poll() != null) {
+			recordedQueries.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @param resultCache the result cache of the run, whose statistics are written along with the summary.
+	 */
+	void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * @return the bytes allocated so far by the current thread; -1 if the JVM does not support measuring it.
+	 */
+	public static long currentThreadAllocatedBytes() {
+		if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+			if (threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled()) {
+				return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * The method writes the run summary as JSON: the phases times, and the queries latency histogram (p50, p99, max),
+	 * hits and allocations, along with the slowest queries, and the result cache statistics (if the results are cached).
+	 * @param path the JSON file path.
+	 * @throws IOException
+	 */
+	public void writeSummary(Path path) throws IOException {
+		List<QueryMetrics> byLatency = new ArrayList<>(queries);
+		byLatency.sort(Comparator.comparingLong((QueryMetrics query) -> query.latencyNanos).reversed());
+		long totalHits = 0;
+		int zeroHitQueries = 0;
+		int partialQueries = 0;
+		long totalAllocated = 0;
+		long maxAllocated = -1;
+		for (QueryMetrics query : byLatency) {
+			totalHits += query.hits;
+			zeroHitQueries += (query.hits == 0) ? 1 : 0;
+			partialQueries += query.partial ? 1 : 0;
+			if (query.allocatedBytes >= 0) {
+				totalAllocated += query.allocatedBytes;
+				maxAllocated = Math.max(maxAllocated, query.allocatedBytes);
+			}
+		}
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"phasesMs\": {");
+		String separator = "\n";
+		for (Phase phase : Phase.values()) {
+			json.append(separator).append("    \"").append(phase.name).append("\": ").append(toMillis(phaseNanos.get(phase).sum()));
+			separator = ",\n";
+		}
+
+		json.append("\n  },\n  \"queries\": {");
+		json.append("\n    \"count\": ").append(byLatency.size());
+		json.append(",\n    \"hits\": ").append(totalHits);
+		json.append(",\n    \"zeroHitQueries\": ").append(zeroHitQueries);
+		json.append(",\n    \"partialQueries\": ").append(partialQueries);
+		json.append(",\n    \"latencyMs\": { \"p50\": ").append(toMillis(percentile(byLatency, 0.50)))
+			.append(", \"p99\": ").append(toMillis(percentile(byLatency, 0.99)))
+			.append(", \"max\": ").append(toMillis(byLatency.isEmpty() ? 0 : byLatency.get(0).latencyNanos)).append(" }");
+		if (maxAllocated >= 0) {
+			json.append(",\n    \"allocatedBytes\": { \"total\": ").append(totalAllocated)
+				.append(", \"max\": ").append(maxAllocated).append(" }");
+		}
+
+		json.append(",\n    \"slowest\": [");
+		separator = "\n";
+		for (QueryMetrics query : byLatency.subList(0, Math.min(SLOWEST_QUERIES, byLatency.size()))) {
+			json.append(separator).append("      { \"id\": ").append(query.queryId)
+				.append(", \"latencyMs\": ").append(toMillis(query.latencyNanos))
+				.append(", \"hits\": ").append(query.hits).append(", \"partial\": ").append(query.partial).append(" }");
+			separator = ",\n";
+		}
+
+		json.append("\n    ]\n  }");
+		ResultCache cache = resultCache;
+		if (cache != null) {
+			json.append(",\n  \"resultCache\": ");
+			cache.appendStats(json);
+		}
+
+		json.append("\n}\n");
+		Files.write(path, json.toString().getBytes());
+	}
+
+	/**
+	 * The method writes the metrics of each query as CSV (query ID, latency, hits, allocated bytes and whether the result is partial).
+	 * @param path the CSV file path.
+	 * @throws IOException
+	 */
+	public void writeQueries(Path path) throws IOException {
+		List<QueryMetrics> byId = new ArrayList<>(queries);
+		byId.sort(Comparator.comparingInt(query -> query.queryId));
+		try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+			writer.write("query,latencyMs,hits,allocatedBytes,partial");
+			writer.newLine();
+			for (QueryMetrics query : byId) {
+				writer.write(query.queryId + "," + toMillis(query.latencyNanos) + "," + query.hits + "," + query.allocatedBytes + "," + query.partial);
+				writer.newLine();
+			}
+		}
+	}
+
+	private static long percentile(List<QueryMetrics> byLatencyDesc, double percentile) {
+		if (byLatencyDesc.isEmpty()) {
+			return 0;
+		}
+
+		// Nearest rank percentile, the list is sorted in descending order.
+		int rank = (int) Math.ceil(percentile * byLatencyDesc.size());
+		return byLatencyDesc.get(byLatencyDesc.size() - Math.max(rank, 1)).latencyNanos;
+	}
+
+	private static String toMillis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	private static class QueryMetrics {
+
+		private final int queryId;
+		private final long latencyNanos;
+		private final int hits;
+		private final long allocatedBytes;
+		private final boolean partial;
+
+		QueryMetrics(int queryId, long latencyNanos, int hits, long allocatedBytes, boolean partial) {
+			this.queryId = queryId;
+			this.latencyNanos = latencyNanos;
+			this.hits = hits;
+			this.allocatedBytes = allocatedBytes;
+			this.partial = partial;
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package ir.websearch.algo.core;
+
+/**
+ * The ranked result of a query, which may be partial: a query whose time budget ran out before all the matching documents
+ * were collected holds the top documents of those collected until then.
+ */
+public class SearchResult {
+
+	private final int[] docIds;
+	private final boolean partial;
+
+	/**
+	 * @param docIds the external IDs of the retrieved documents, by rank.
+	 * @param partial whether the search was cut short by its time budget.
+	 */
+	public SearchResult(int[] docIds, boolean partial) {
+		this.docIds = docIds;
+		this.partial = partial;
+	}
+
+	/**
+	 * @return the external IDs of the retrieved documents, by rank.
+	 */
+	public int[] getDocIds() {
+		return docIds;
+	}
+
+	/**
+	 * @return whether the search was cut short by its time budget, hence the documents are the best of only part of the matches.
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+}
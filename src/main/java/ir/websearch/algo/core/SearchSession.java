@@ -0,0 +1,427 @@
+package ir.websearch.algo.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.Set;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.ReferenceManager.RefreshListener;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TimeLimitingCollector.TimeExceededException;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+
+import ir.websearch.algo.core.SearchMetrics.Phase;
+import ir.websearch.algo.doc.Document;
+import ir.websearch.algo.query.Query;
+
+/**
+ * An open index ready for searching, along with the query compiler of the algorithm.
+ * The session is thread safe, hence queries may be searched concurrently.
+ * The index may be partitioned into shards, which are searched in parallel for each query (see {@link ShardSearcherManager}).
+ * An updatable session also holds an {@link IndexUpdater}, whose updates are searched once the searchers are refreshed.
+ * The results of repeated queries may be served from a {@link ResultCache}, which is invalidated whenever the searchers
+ * are refreshed or the query compiler is replaced.
+ * The top documents of a query are collected in pages, each searched after the last document of the previous page,
+ * so the memory of a search stays bounded by the page size however deep its results go (see {@link #searchPages}).
+ */
+public class SearchSession implements Closeable {
+	
+	/**
+	 * A query time budget of no limit.
+	 */
+	public static final long NO_BUDGET = Long.MAX_VALUE;
+	
+	/**
+	 * Sorts the matching documents by their tf-idf scores, in descending order. 
+	 * The external document ID is a secondary sort key (i.e., for breaking ties), in ascending order.
+	 */
+	static final Sort SCORE_THEN_ID_SORT = new Sort(SortField.FIELD_SCORE, new SortField(Document.ID_FIELD, SortField.Type.INT));
+	static final int EXTERNAL_ID_SORT_IDX = 1;
+	
+	private final BasicAlgorithm algorithm;
+	private final List<Directory> shards;
+	private final ReferenceManager<IndexSearcher> searcherManager;
+	private final IndexUpdater updater;
+	private volatile QueryCompiler queryCompiler;
+	private final ResultCache resultCache;
+	
+	/**
+	 * @param algorithm the algorithm generating the lucene queries.
+	 * @param shards the shard directories of the collection index. Owned by the session from now on.
+	 * @param searcherManager the manager of the index searchers. Owned by the session from now on.
+	 * @param updater the updater of the index; null for a read only session. Owned by the session from now on.
+	 * @param queryCompiler the compiler of the lucene queries.
+	 * @param resultCache the cache of the query results; null to search every query.
+	 */
+	SearchSession(BasicAlgorithm algorithm, List<Directory> shards, ReferenceManager<IndexSearcher> searcherManager, IndexUpdater updater,
+			QueryCompiler queryCompiler, ResultCache resultCache) {
+		this.algorithm = algorithm;
+		this.shards = shards;
+		this.searcherManager = searcherManager;
+		this.updater = updater;
+		this.queryCompiler = queryCompiler;
+		this.resultCache = resultCache;
+		if (resultCache != null) {
+			searcherManager.addListener(new RefreshListener() {
+				
+				@Override
+				public void beforeRefresh() {
+				}
+				
+				@Override
+				public void afterRefresh(boolean didRefresh) {
+					if (didRefresh) {
+						resultCache.invalidate();
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * @return the updater of the index; null for a read only session.
+	 */
+	public IndexUpdater getUpdater() {
+		return updater;
+	}
+	
+	/**
+	 * @param queryCompiler the compiler of the following queries (e.g., once the frequent stop words change).
+	 */
+	void setQueryCompiler(QueryCompiler queryCompiler) {
+		this.queryCompiler = queryCompiler;
+		invalidateResults();
+	}
+	
+	/**
+	 * @param freqStopWords the most frequent terms of the collection, as calculated outside the session (e.g., across the
+	 * shards of several processes). Replaces the query compiler.
+	 */
+	void setCollectionStopWords(Set<String> freqStopWords) {
+		this.queryCompiler = algorithm.createQueryCompiler(freqStopWords);
+		invalidateResults();
+	}
+	
+	private void invalidateResults() {
+		if (resultCache != null) {
+			resultCache.invalidate();
+		}
+	}
+	
+	/**
+	 * @param query the query.
+	 * @return the lucene query of the algorithm, compiled by the current query compiler. Must not be modified.
+	 * @throws ParseException
+	 */
+	org.apache.lucene.search.Query generateQuery(Query query) throws ParseException {
+		return queryCompiler.compile(query.getQuery());
+	}
+	
+	/**
+	 * @return the current searcher of the index. Must be released by {@link #releaseSearcher(IndexSearcher)}.
+	 * @throws IOException
+	 */
+	IndexSearcher acquireSearcher() throws IOException {
+		return searcherManager.acquire();
+	}
+	
+	/**
+	 * @param searcher a searcher acquired by {@link #acquireSearcher()}.
+	 * @throws IOException
+	 */
+	void releaseSearcher(IndexSearcher searcher) throws IOException {
+		searcherManager.release(searcher);
+	}
+	
+	/**
+	 * The method fetches the inverted list from the index for the given query.
+	 * The matching documents are sorted by their tf-idf scores and external document ID. The amount of retrieved documents
+	 * is the amount of the query, or else the amount of the run (see {@link ir.websearch.algo.helper.InputParams#getHits()}).
+	 * A query searched before on the same index and with the same query compiler is served from the result cache.
+	 * The search is limited by the query time budget of the run (see {@link #search(Query, long)}).
+	 * @param query the query to search.
+	 * @return the external IDs of the retrieved documents, by rank.
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	public int[] search(Query query) throws ParseException, IOException {
+		return search(query, NO_BUDGET).getDocIds();
+	}
+	
+	/**
+	 * The method searches a query within a time budget: the smaller of the given budget and the query time budget of the run
+	 * (see {@link ir.websearch.algo.helper.InputParams#getQueryTimeoutMillis()}).
+	 * Once the budget runs out, the documents are no longer collected, and the top documents of those collected so far 
+	 * are returned as a partial result. A partial result is not cached. A query of no budget left is not searched at all.
+	 * @param query the query to search.
+	 * @param budgetNanos the time budget of the query, in nanoseconds; {@link #NO_BUDGET} for the query time budget of the run.
+	 * @return the external IDs of the retrieved documents, by rank, and whether they are partial.
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	public SearchResult search(Query query, long budgetNanos) throws ParseException, IOException {
+		long allocatedStart = SearchMetrics.currentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		long budget = Math.min(budgetNanos, algorithm.getQueryBudgetNanos());
+		if (budget <= 0) {
+			algorithm.getMetrics().recordQuery(query.getId(), System.nanoTime() - start, 0, 0, true);
+			return new SearchResult(new int[0], true);
+		}
+		
+		
+		int k = algorithm.getHits(query);
+		String cacheKey = null;
+		long cacheGeneration = 0;
+		if (resultCache != null) {
+			// The generation is read before the compiler and the searcher, so a result of a replaced one is not cached.
+			cacheGeneration = resultCache.getGeneration();
+			cacheKey = ResultCache.key(algorithm.getName(), k, query.getQuery());
+			int[] cachedIds = resultCache.get(cacheKey);
+			if (cachedIds != null) {
+				long allocated = (allocatedStart < 0) ? -1 : SearchMetrics.currentThreadAllocatedBytes() - allocatedStart;
+				algorithm.getMetrics().recordQuery(query.getId(), System.nanoTime() - start, cachedIds.length, allocated);
+				return new SearchResult(cachedIds, false);
+			}
+		}
+		
+		org.apache.lucene.search.Query q = queryCompiler.compile(query.getQuery());
+		long parsed = System.nanoTime();
+		IndexSearcher searcher = searcherManager.acquire();
+		IdCollector ids = new IdCollector(Math.min(k, Math.max(1, searcher.getIndexReader().maxDoc())));
+		boolean partial;
+		try {
+			partial = searchPages(searcher, q, k, (budget == NO_BUDGET) ? NO_BUDGET : start + budget, ids);
+		} finally {
+			searcherManager.release(searcher);
+		}
+		
+		long searched = System.nanoTime();
+		int[] docIds = ids.getDocIds();
+		if (resultCache != null && !partial) {
+			resultCache.put(cacheKey, docIds, cacheGeneration);
+		}
+		
+		long end = System.nanoTime();
+		SearchMetrics metrics = algorithm.getMetrics();
+		metrics.addTime(Phase.QUERY_PARSE, parsed - start);
+		metrics.addTime(Phase.SEARCH, searched - parsed);
+		metrics.addTime(Phase.SORT, end - searched);
+		long allocated = (allocatedStart < 0) ? -1 : SearchMetrics.currentThreadAllocatedBytes() - allocatedStart;
+		metrics.recordQuery(query.getId(), end - start, docIds.length, allocated, partial);
+		return new SearchResult(docIds, partial);
+	}
+	
+	/**
+	 * The method collects the top k documents of a query by {@link #SCORE_THEN_ID_SORT}, in pages of the page size of the run
+	 * (see {@link ir.websearch.algo.helper.InputParams#getPageSize()}). Each page is searched after the last document 
+	 * of the previous page, which is exact since the sort is a total order, so the collectors never hold more than a page.
+	 * The pages end once k documents are collected, a page comes short or the deadline passes.
+	 * @param searcher the searcher of the index. All the pages are searched by the same searcher.
+	 * @param q the lucene query.
+	 * @param k the amount of documents to collect.
+	 * @param deadline the {@link System#nanoTime()} by which the collection ends; {@link #NO_BUDGET} for no limit.
+	 * @param consumer the consumer of the pages, by rank. A page must not be kept, since its documents are {@link FieldDoc}s
+	 * of the sort values.
+	 * @return whether the collection was terminated by the deadline.
+	 * @throws IOException
+	 */
+	boolean searchPages(IndexSearcher searcher, org.apache.lucene.search.Query q, int k, long deadline, Consumer<ScoreDoc[]> consumer) 
+			throws IOException {
+		int pageSize = algorithm.getPageSize();
+		int maxDoc = searcher.getIndexReader().maxDoc();
+		FieldDoc after = null;
+		int collected = 0;
+		while (collected < k) {
+			int numHits = Math.min(pageSize, k - collected);
+			ScoreDoc[] page;
+			boolean timedOut = false;
+			if (deadline == NO_BUDGET) {
+				page = searcher.searchAfter(after, q, numHits, SCORE_THEN_ID_SORT, true, false).scoreDocs;
+			} else {
+				BudgetCollectorManager collectorManager = new BudgetCollectorManager(maxDoc, numHits, after, deadline);
+				page = searcher.search(q, collectorManager).scoreDocs;
+				timedOut = collectorManager.isTimedOut();
+			}
+			
+			consumer.accept(page);
+			collected += page.length;
+			if (timedOut) {
+				return true;
+			}
+			
+			if (page.length < numHits) {
+				break;
+			}
+			
+			after = (FieldDoc) page[page.length - 1];
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Gathers the external IDs of the pages of a search into a primitive array, grown as the pages come.
+	 */
+	private static class IdCollector implements Consumer<ScoreDoc[]> {
+		
+		private int[] docIds;
+		private int count = 0;
+		
+		/**
+		 * @param capacity the expected amount of documents.
+		 */
+		IdCollector(int capacity) {
+			this.docIds = new int[capacity];
+		}
+		
+		@Override
+		public void accept(ScoreDoc[] page) {
+			if (count + page.length > docIds.length) {
+				docIds = Arrays.copyOf(docIds, Math.max(count + page.length, 2 * docIds.length));
+			}
+			
+			for (ScoreDoc scoreDoc : page) {
+				// The external document ID is the secondary sort value, read from the doc values while collecting.
+				docIds[count++] = (Integer) ((FieldDoc) scoreDoc).fields[EXTERNAL_ID_SORT_IDX];
+			}
+		}
+		
+		/**
+		 * @return the external IDs of the collected documents, by rank.
+		 */
+		int[] getDocIds() {
+			return (count == docIds.length) ? docIds : Arrays.copyOf(docIds, count);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			// The updater stops refreshing the searchers before they are closed.
+			if (updater != null) {
+				updater.close();
+			}
+		} finally {
+			try {
+				searcherManager.close();
+			} finally {
+				IOUtils.close(shards);
+			}
+		}
+	}
+	
+	/**
+	 * Collects the top documents of each slice of the searcher until a deadline, like {@link IndexSearcher#searchAfter(
+	 * org.apache.lucene.search.ScoreDoc, org.apache.lucene.search.Query, int, Sort, boolean, boolean)}.
+	 * The time is checked by a {@link TimeLimitingCollector} per slice. Once the deadline passes, the collection of every slice 
+	 * is terminated (rather than failing the search), so the collected top documents are merged as usual.
+	 */
+	private static class BudgetCollectorManager implements CollectorManager<BudgetCollectorManager.BudgetCollector, TopFieldDocs> {
+		
+		private final int numHits;
+		private final FieldDoc after;
+		private final long deadline;
+		private volatile boolean timedOut = false;
+		
+		/**
+		 * @param maxDoc the amount of documents of the searched index.
+		 * @param numHits the amount of documents to collect.
+		 * @param after the last document of the previous page; null for the first page.
+		 * @param deadline the {@link System#nanoTime()} by which the collection ends.
+		 */
+		BudgetCollectorManager(int maxDoc, int numHits, FieldDoc after, long deadline) {
+			this.numHits = Math.max(1, Math.min(numHits, maxDoc));
+			this.after = after;
+			this.deadline = deadline;
+		}
+		
+		/**
+		 * @return whether the collection of any of the slices was terminated by the deadline.
+		 */
+		boolean isTimedOut() {
+			return timedOut;
+		}
+		
+		@Override
+		public BudgetCollector newCollector() throws IOException {
+			TopFieldCollector topCollector = TopFieldCollector.create(SCORE_THEN_ID_SORT, numHits, after, true, true, false);
+			// The global counter ticks in milliseconds.
+			long ticksAllowed = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+			TimeLimitingCollector limitingCollector = new TimeLimitingCollector(topCollector, TimeLimitingCollector.getGlobalCounter(), 
+					ticksAllowed);
+			limitingCollector.setBaseline();
+			return new BudgetCollector(limitingCollector, topCollector);
+		}
+		
+		@Override
+		public TopFieldDocs reduce(Collection<BudgetCollector> collectors) throws IOException {
+			TopFieldDocs[] topDocs = new TopFieldDocs[collectors.size()];
+			int i = 0;
+			for (BudgetCollector collector : collectors) {
+				topDocs[i++] = collector.topCollector.topDocs();
+			}
+			
+			return TopDocs.merge(SCORE_THEN_ID_SORT, numHits, topDocs);
+		}
+		
+		/**
+		 * Turns the timeout of the time limiting collector into a terminated collection.
+		 */
+		private class BudgetCollector extends FilterCollector {
+			
+			private final TopFieldCollector topCollector;
+			
+			BudgetCollector(TimeLimitingCollector limitingCollector, TopFieldCollector topCollector) {
+				super(limitingCollector);
+				this.topCollector = topCollector;
+			}
+			
+			@Override
+			public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+				if (timedOut) {
+					throw new CollectionTerminatedException();
+				}
+				
+				try {
+					return new FilterLeafCollector(super.getLeafCollector(context)) {
+						
+						@Override
+						public void collect(int doc) throws IOException {
+							try {
+								super.collect(doc);
+							} catch (TimeExceededException e) {
+								timedOut = true;
+								throw new CollectionTerminatedException();
+							}
+						}
+					};
+				} catch (TimeExceededException e) {
+					timedOut = true;
+					throw new CollectionTerminatedException();
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package ir.websearch.algo.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * Manages a single searcher over all the shards of an index.
+ * The searcher reads the shards through one {@link MultiReader}, so the query weights are built from the global term statistics
+ * (document frequencies and collection size) and the scores are the same as of an unsharded index.
+ * Each query is scattered to the shards in parallel, one task per shard, and the per shard top hits are gathered by
+ * {@link org.apache.lucene.search.TopDocs#merge}. The shards are read only, hence the searcher is never refreshed.
+ */
+class ShardSearcherManager extends ReferenceManager<IndexSearcher> {
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param shards the shard directories of the index, by shard number. Not owned by the manager.
+	 * @throws IOException
+	 */
+	ShardSearcherManager(List<Directory> shards) throws IOException {
+		DirectoryReader[] readers = new DirectoryReader[shards.size()];
+		try {
+			for (int shard = 0; shard < readers.length; shard++) {
+				readers[shard] = DirectoryReader.open(shards.get(shard));
+			}
+		} catch (IOException e) {
+			IOUtils.closeWhileHandlingException(readers);
+			throw e;
+		}
+
+		executor = Executors.newFixedThreadPool(readers.length);
+		current = new ShardSearcher(new MultiReader(readers, true), executor);
+	}
+
+	@Override
+	protected void decRef(IndexSearcher reference) throws IOException {
+		reference.getIndexReader().decRef();
+	}
+
+	@Override
+	protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) {
+		return null;
+	}
+
+	@Override
+	protected boolean tryIncRef(IndexSearcher reference) {
+		return reference.getIndexReader().tryIncRef();
+	}
+
+	@Override
+	protected int getRefCount(IndexSearcher reference) {
+		return reference.getIndexReader().getRefCount();
+	}
+
+	@Override
+	protected void afterClose() {
+		executor.shutdown();
+	}
+
+	/**
+	 * A searcher slicing the leaves by shard, so a query is searched by a single task per shard.
+	 */
+	private static class ShardSearcher extends IndexSearcher {
+
+		ShardSearcher(IndexReader reader, ExecutorService executor) {
+			super(reader, executor);
+		}
+
+		@Override
+		protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+			List<LeafSlice> slices = new ArrayList<>();
+			List<LeafReaderContext> shardLeaves = new ArrayList<>();
+			IndexReaderContext shard = null;
+			for (LeafReaderContext leaf : leaves) {
+				// The leaves of a shard are consecutive, and share the context of the shard reader as their parent.
+				if (leaf.parent != shard && !shardLeaves.isEmpty()) {
+					slices.add(new LeafSlice(shardLeaves.toArray(new LeafReaderContext[shardLeaves.size()])));
+					shardLeaves.clear();
+				}
+
+				shard = leaf.parent;
+				shardLeaves.add(leaf);
+			}
+
+			if (!shardLeaves.isEmpty()) {
+				slices.add(new LeafSlice(shardLeaves.toArray(new LeafReaderContext[shardLeaves.size()])));
+			}
+
+			return slices.toArray(new LeafSlice[slices.size()]);
+		}
+	}
+
+}
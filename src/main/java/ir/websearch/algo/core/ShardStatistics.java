@@ -0,0 +1,141 @@
+package ir.websearch.algo.core;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * The term and collection statistics of the terms of a query, as seen by one or more index shards.
+ * The statistics of the shards are summed into global statistics, which are then searched with on every shard
+ * (see {@link #createSearcher(IndexReader)}), so the scores of all the shards are comparable, and the same as of a single index.
+ * The statistics are encoded as tab separated values, for sending them between processes (see {@link ShardWorker}).
+ */
+class ShardStatistics {
+
+	private final Map<String, CollectionStatistics> collectionStats = new LinkedHashMap<>();
+	private final Map<Term, TermStatistics> termStats = new LinkedHashMap<>();
+
+	/**
+	 * The method reads the statistics of the given terms from a searcher.
+	 * @param searcher the searcher of the shard.
+	 * @param terms the query terms.
+	 * @return the statistics of the shard.
+	 * @throws IOException
+	 */
+	static ShardStatistics of(IndexSearcher searcher, Set<Term> terms) throws IOException {
+		ShardStatistics stats = new ShardStatistics();
+		for (Term term : new TreeSet<>(terms)) {
+			if (!stats.collectionStats.containsKey(term.field())) {
+				stats.collectionStats.put(term.field(), searcher.collectionStatistics(term.field()));
+			}
+
+			TermContext context = TermContext.build(searcher.getTopReaderContext(), term);
+			stats.termStats.put(term, searcher.termStatistics(term, context));
+		}
+
+		return stats;
+	}
+
+	/**
+	 * The method sums the statistics of another shard into the statistics.
+	 * @param other the statistics of the other shard.
+	 */
+	void add(ShardStatistics other) {
+		for (CollectionStatistics stats : other.collectionStats.values()) {
+			collectionStats.merge(stats.field(), stats, (a, b) -> new CollectionStatistics(a.field(), a.maxDoc() + b.maxDoc(),
+					sum(a.docCount(), b.docCount()), sum(a.sumTotalTermFreq(), b.sumTotalTermFreq()), sum(a.sumDocFreq(), b.sumDocFreq())));
+		}
+
+		for (Map.Entry<Term, TermStatistics> entry : other.termStats.entrySet()) {
+			termStats.merge(entry.getKey(), entry.getValue(), (a, b) -> new TermStatistics(a.term(), a.docFreq() + b.docFreq(),
+					sum(a.totalTermFreq(), b.totalTermFreq())));
+		}
+	}
+
+	/**
+	 * The method creates a searcher of a shard, weighting the queries by the statistics instead of the statistics of the shard.
+	 * The statistics must include all the terms of the searched queries.
+	 * @param reader the reader of the shard.
+	 * @return the searcher.
+	 */
+	IndexSearcher createSearcher(IndexReader reader) {
+		return new IndexSearcher(reader) {
+
+			@Override
+			public CollectionStatistics collectionStatistics(String field) throws IOException {
+				CollectionStatistics stats = collectionStats.get(field);
+				return (stats != null) ? stats : super.collectionStatistics(field);
+			}
+
+			@Override
+			public TermStatistics termStatistics(Term term, TermContext context) throws IOException {
+				TermStatistics stats = termStats.get(term);
+				return (stats != null) ? stats : super.termStatistics(term, context);
+			}
+		};
+	}
+
+	/**
+	 * The method appends the statistics, as tab separated values: the amount of fields,
+	 * the fields statistics (field, maxDoc, docCount, sumTotalTermFreq, sumDocFreq), the amount of terms,
+	 * and the terms statistics (field, term, docFreq, totalTermFreq).
+	 * @param out the buffer to append to.
+	 */
+	void encode(StringBuilder out) {
+		out.append(collectionStats.size());
+		for (CollectionStatistics stats : collectionStats.values()) {
+			out.append('\t').append(stats.field()).append('\t').append(stats.maxDoc()).append('\t').append(stats.docCount());
+			out.append('\t').append(stats.sumTotalTermFreq()).append('\t').append(stats.sumDocFreq());
+		}
+
+		out.append('\t').append(termStats.size());
+		for (Map.Entry<Term, TermStatistics> entry : termStats.entrySet()) {
+			TermStatistics stats = entry.getValue();
+			out.append('\t').append(entry.getKey().field()).append('\t').append(entry.getKey().text());
+			out.append('\t').append(stats.docFreq()).append('\t').append(stats.totalTermFreq());
+		}
+	}
+
+	/**
+	 * The method decodes statistics encoded by {@link #encode(StringBuilder)}.
+	 * @param values the tab separated values.
+	 * @param offset the index of the first value of the statistics.
+	 * @return the statistics.
+	 */
+	static ShardStatistics decode(String[] values, int offset) {
+		ShardStatistics stats = new ShardStatistics();
+		int i = offset;
+		int fields = Integer.parseInt(values[i++]);
+		for (int f = 0; f < fields; f++, i += 5) {
+			stats.collectionStats.put(values[i], new CollectionStatistics(values[i], Long.parseLong(values[i + 1]),
+					Long.parseLong(values[i + 2]), Long.parseLong(values[i + 3]), Long.parseLong(values[i + 4])));
+		}
+
+		int terms = Integer.parseInt(values[i++]);
+		for (int t = 0; t < terms; t++, i += 4) {
+			Term term = new Term(values[i], values[i + 1]);
+			stats.termStats.put(term, new TermStatistics(new BytesRef(values[i + 1]), Long.parseLong(values[i + 2]),
+					Long.parseLong(values[i + 3])));
+		}
+
+		return stats;
+	}
+
+	/**
+	 * Sums two optional statistics, where -1 stands for a statistic the codec does not record.
+	 */
+	private static long sum(long a, long b) {
+		return (a == -1 || b == -1) ? -1 : a + b;
+	}
+
+}
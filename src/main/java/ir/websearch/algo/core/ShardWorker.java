@@ -0,0 +1,253 @@
+package ir.websearch.algo.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.misc.HighFreqTerms;
+import org.apache.lucene.misc.TermStats;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.BytesRef;
+
+import ir.websearch.algo.doc.Document;
+import ir.websearch.algo.query.Query;
+
+/**
+ * A shard node of a distributed search: answers the requests of a {@link DistributedAlgorithm} coordinator
+ * over the index of a slice of the collection (see {@link ir.websearch.algo.helper.InputParams#getSlice()}).
+ * <p>
+ * The protocol is line based, one request line and one response line at a time, with tab separated values.
+ * A response is either "OK" followed by the values, or "ERR" followed by a message.
+ * <ul>
+ * <li>{@code STOPWORDS <terms>} - sets the collection stop words (space separated) of the following queries.</li>
+ * <li>{@code TOP <k>} - the k most frequent text terms of the slice, as (term, frequency) values.</li>
+ * <li>{@code ABOVE <frequency>} - the text terms of the slice of at least the given frequency, as (term, frequency) values.</li>
+ * <li>{@code FREQS <term>...} - the frequencies of the given text terms in the slice.</li>
+ * <li>{@code STATS <query ID> <query text>} - the statistics of the query terms in the slice (see {@link ShardStatistics}).</li>
+ * <li>{@code SEARCH <query ID> <k> <query text> <statistics>} - the top k documents of the slice, weighted by the given
+ * (global) statistics, as (external ID, score) values.</li>
+ * </ul>
+ * The worker listens on the loopback address only, and serves each connection by its own thread.
+ */
+public class ShardWorker implements Closeable {
+
+	static final String OK = "OK";
+	static final String ERROR = "ERR";
+	static final String STOP_WORDS_REQUEST = "STOPWORDS";
+	static final String TOP_REQUEST = "TOP";
+	static final String ABOVE_REQUEST = "ABOVE";
+	static final String FREQS_REQUEST = "FREQS";
+	static final String STATS_REQUEST = "STATS";
+	static final String SEARCH_REQUEST = "SEARCH";
+	static final char SEPARATOR = '\t';
+
+	private final SearchSession session;
+	private final ServerSocket serverSocket;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private volatile Set<String> stopWords = null;
+
+	/**
+	 * The method starts the worker.
+	 * @param session the search session of the slice index. Owned by the worker from now on.
+	 * @param port the local port to listen on.
+	 * @throws IOException
+	 */
+	public ShardWorker(SearchSession session, int port) throws IOException {
+		this.session = session;
+		this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		executor.execute(this::accept);
+	}
+
+	/**
+	 * @return the address the worker listens on.
+	 */
+	public InetSocketAddress getAddress() {
+		return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			serverSocket.close();
+			executor.shutdownNow();
+		} finally {
+			session.close();
+		}
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				executor.execute(() -> serve(socket));
+			} catch (IOException e) {
+				// The worker is closed.
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket connection = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+			connection.setTcpNoDelay(true);
+			String request;
+			while ((request = in.readLine()) != null) {
+				out.write(handle(request));
+				out.write('\n');
+				out.flush();
+			}
+		} catch (SocketException e) {
+			// The coordinator dropped the connection.
+		} catch (IOException e) {
+			System.out.println("Faild to serve a coordinator connection.");
+		}
+	}
+
+	private String handle(String request) {
+		String[] values = request.split(String.valueOf(SEPARATOR), -1);
+		StringBuilder response = new StringBuilder(OK);
+		try {
+			switch (values[0]) {
+			case STOP_WORDS_REQUEST:
+				Set<String> words = values[1].isEmpty() ? new HashSet<>() : new HashSet<>(Arrays.asList(values[1].split(" ")));
+				if (!words.equals(stopWords)) {
+					stopWords = words;
+					session.setCollectionStopWords(words);
+				}
+				break;
+			case TOP_REQUEST:
+				top(Integer.parseInt(values[1]), response);
+				break;
+			case ABOVE_REQUEST:
+				above(Long.parseLong(values[1]), response);
+				break;
+			case FREQS_REQUEST:
+				freqs(Arrays.copyOfRange(values, 1, values.length), response);
+				break;
+			case STATS_REQUEST:
+				stats(createQuery(values[1], values[2]), response);
+				break;
+			case SEARCH_REQUEST:
+				search(createQuery(values[1], values[3]), Integer.parseInt(values[2]), ShardStatistics.decode(values, 4), response);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown request: " + values[0]);
+			}
+		} catch (ParseException | IOException | RuntimeException e) {
+			return ERROR + SEPARATOR + String.valueOf(e.getMessage()).replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+		}
+
+		return response.toString();
+	}
+
+	private void top(int k, StringBuilder response) throws IOException {
+		IndexSearcher searcher = session.acquireSearcher();
+		try {
+			IndexReader reader = searcher.getIndexReader();
+			if (MultiFields.getTerms(reader, Document.TEXT_FIELD) == null) {
+				return;
+			}
+
+			TermStats[] topTerms = HighFreqTerms.getHighFreqTerms(reader, k, Document.TEXT_FIELD, new HighFreqTerms.TotalTermFreqComparator());
+			for (TermStats ts : topTerms) {
+				response.append(SEPARATOR).append(ts.termtext.utf8ToString()).append(SEPARATOR).append(ts.totalTermFreq);
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		} finally {
+			session.releaseSearcher(searcher);
+		}
+	}
+
+	private void above(long minFreq, StringBuilder response) throws IOException {
+		IndexSearcher searcher = session.acquireSearcher();
+		try {
+			Terms terms = MultiFields.getTerms(searcher.getIndexReader(), Document.TEXT_FIELD);
+			if (terms == null) {
+				return;
+			}
+
+			TermsEnum termsEnum = terms.iterator();
+			BytesRef term;
+			while ((term = termsEnum.next()) != null) {
+				if (termsEnum.totalTermFreq() >= minFreq) {
+					response.append(SEPARATOR).append(term.utf8ToString()).append(SEPARATOR).append(termsEnum.totalTermFreq());
+				}
+			}
+		} finally {
+			session.releaseSearcher(searcher);
+		}
+	}
+
+	private void freqs(String[] termTexts, StringBuilder response) throws IOException {
+		IndexSearcher searcher = session.acquireSearcher();
+		try {
+			Terms terms = MultiFields.getTerms(searcher.getIndexReader(), Document.TEXT_FIELD);
+			TermsEnum termsEnum = (terms == null) ? null : terms.iterator();
+			for (String termText : termTexts) {
+				boolean found = termsEnum != null && termsEnum.seekExact(new BytesRef(termText));
+				response.append(SEPARATOR).append(found ? termsEnum.totalTermFreq() : 0);
+			}
+		} finally {
+			session.releaseSearcher(searcher);
+		}
+	}
+
+	private void stats(Query query, StringBuilder response) throws ParseException, IOException {
+		IndexSearcher searcher = session.acquireSearcher();
+		try {
+			Set<Term> terms = new HashSet<>();
+			searcher.createNormalizedWeight(session.generateQuery(query), true).extractTerms(terms);
+			response.append(SEPARATOR);
+			ShardStatistics.of(searcher, terms).encode(response);
+		} finally {
+			session.releaseSearcher(searcher);
+		}
+	}
+
+	private void search(Query query, int k, ShardStatistics globalStats, StringBuilder response) throws ParseException, IOException {
+		IndexSearcher searcher = session.acquireSearcher();
+		try {
+			IndexSearcher globalSearcher = globalStats.createSearcher(searcher.getIndexReader());
+			session.searchPages(globalSearcher, session.generateQuery(query), k, SearchSession.NO_BUDGET, page -> {
+				for (ScoreDoc scoreDoc : page) {
+					response.append(SEPARATOR).append(((FieldDoc) scoreDoc).fields[SearchSession.EXTERNAL_ID_SORT_IDX]);
+					response.append(SEPARATOR).append(scoreDoc.score);
+				}
+			});
+		} finally {
+			session.releaseSearcher(searcher);
+		}
+	}
+
+	private static Query createQuery(String id, String text) {
+		return new Query.Builder().id(Integer.valueOf(id)).query(text).build();
+	}
+
+}
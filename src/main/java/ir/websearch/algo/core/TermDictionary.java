@@ -0,0 +1,177 @@
+package ir.websearch.algo.core;
+
+import java.util.Arrays;
+
+/**
+ * A dictionary assigning dense IDs (0, 1, 2, ...) to terms, by insertion order.
+ * The terms are kept in a single character pool, and looked up by an open addressing hash table of term IDs,
+ * so neither strings nor boxed values are created per term or per lookup. The dictionary is not thread safe for adding,
+ * but may be looked up concurrently once built.
+ */
+public class TermDictionary {
+
+	private static final int EMPTY_SLOT = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private char[] pool = new char[INITIAL_CAPACITY * 8];
+	private int poolLength = 0;
+	private int[] termStarts = new int[INITIAL_CAPACITY + 1];
+	private int[] termHashes = new int[INITIAL_CAPACITY];
+	private int size = 0;
+	private int[] slots = newSlots(INITIAL_CAPACITY * 2);
+
+	/**
+	 * @param term the term to add.
+	 * @return the ID of the term (added now or before).
+	 */
+	public int add(String term) {
+		char[] chars = term.toCharArray();
+		return add(chars, 0, chars.length);
+	}
+
+	/**
+	 * @param buffer the buffer holding the term.
+	 * @param offset the term offset in the buffer.
+	 * @param length the term length.
+	 * @return the ID of the term (added now or before).
+	 */
+	public int add(char[] buffer, int offset, int length) {
+		int hash = hash(buffer, offset, length);
+		int slot = findSlot(buffer, offset, length, hash);
+		if (slots[slot] != EMPTY_SLOT) {
+			return slots[slot];
+		}
+
+		int termId = size++;
+		ensureCapacity(length);
+		System.arraycopy(buffer, offset, pool, poolLength, length);
+		poolLength += length;
+		termStarts[termId + 1] = poolLength;
+		termHashes[termId] = hash;
+		slots[slot] = termId;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+
+		return termId;
+	}
+
+	/**
+	 * @param buffer the buffer holding the term.
+	 * @param offset the term offset in the buffer.
+	 * @param length the term length.
+	 * @return the ID of the term; -1 if the term is not in the dictionary.
+	 */
+	public int find(char[] buffer, int offset, int length) {
+		return slots[findSlot(buffer, offset, length, hash(buffer, offset, length))];
+	}
+
+	/**
+	 * @param term the term to find.
+	 * @return the ID of the term; -1 if the term is not in the dictionary.
+	 */
+	public int find(String term) {
+		char[] chars = term.toCharArray();
+		return find(chars, 0, chars.length);
+	}
+
+	/**
+	 * @return the amount of terms.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param termId the term ID.
+	 * @return the term.
+	 */
+	public String term(int termId) {
+		return new String(pool, termStarts[termId], termStarts[termId + 1] - termStarts[termId]);
+	}
+
+	/**
+	 * The method compares two terms by their characters.
+	 * @return a negative number, zero, or a positive number as the first term is less than, equal to, or greater than the second term.
+	 */
+	public int compare(int firstTermId, int secondTermId) {
+		int first = termStarts[firstTermId];
+		int firstEnd = termStarts[firstTermId + 1];
+		int second = termStarts[secondTermId];
+		int secondEnd = termStarts[secondTermId + 1];
+		while (first < firstEnd && second < secondEnd) {
+			int diff = pool[first++] - pool[second++];
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		return (firstEnd - first) - (secondEnd - second);
+	}
+
+	private int findSlot(char[] buffer, int offset, int length, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while (slots[slot] != EMPTY_SLOT && !termEquals(slots[slot], buffer, offset, length)) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	private boolean termEquals(int termId, char[] buffer, int offset, int length) {
+		int start = termStarts[termId];
+		if (termStarts[termId + 1] - start != length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (pool[start + i] != buffer[offset + i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void ensureCapacity(int length) {
+		if (poolLength + length > pool.length) {
+			pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolLength + length));
+		}
+
+		if (size + 1 > termHashes.length) {
+			termHashes = Arrays.copyOf(termHashes, termHashes.length * 2);
+			termStarts = Arrays.copyOf(termStarts, termHashes.length + 1);
+		}
+	}
+
+	private void rehash() {
+		slots = newSlots(slots.length * 2);
+		int mask = slots.length - 1;
+		for (int termId = 0; termId < size; termId++) {
+			int slot = termHashes[termId] & mask;
+			while (slots[slot] != EMPTY_SLOT) {
+				slot = (slot + 1) & mask;
+			}
+
+			slots[slot] = termId;
+		}
+	}
+
+	private static int[] newSlots(int capacity) {
+		int[] slots = new int[capacity];
+		Arrays.fill(slots, EMPTY_SLOT);
+		return slots;
+	}
+
+	private static int hash(char[] buffer, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + buffer[i];
+		}
+
+		// Spread the bits, the slot is taken from the low bits.
+		return hash ^ (hash >>> 16);
+	}
+
+}
@@ -0,0 +1,148 @@
+package ir.websearch.algo.core;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * The total frequency of each term of an index field, kept up to date as documents are added and removed,
+ * so the most frequent terms can be found without scanning the term dictionary of the index again.
+ * The frequencies are thread safe.
+ */
+public class TermFrequencies {
+
+	private final String field;
+	private final Analyzer analyzer;
+	private final Map<String, long[]> frequencies = new HashMap<>();
+
+	/**
+	 * @param field the index field whose terms are counted.
+	 * @param analyzer the analyzer the field is indexed with.
+	 */
+	public TermFrequencies(String field, Analyzer analyzer) {
+		this.field = field;
+		this.analyzer = analyzer;
+	}
+
+	/**
+	 * The method loads the total frequencies of the field terms from the index.
+	 * @param reader the index reader.
+	 * @throws IOException
+	 */
+	public synchronized void load(IndexReader reader) throws IOException {
+		frequencies.clear();
+		Terms terms = MultiFields.getTerms(reader, field);
+		if (terms == null) {
+			return;
+		}
+
+		TermsEnum termsEnum = terms.iterator();
+		BytesRef term;
+		while ((term = termsEnum.next()) != null) {
+			frequencies.put(term.utf8ToString(), new long[] { termsEnum.totalTermFreq() });
+		}
+	}
+
+	/**
+	 * @param text the field text of an added document.
+	 * @throws IOException
+	 */
+	public void add(String text) throws IOException {
+		add(count(text));
+	}
+
+	/**
+	 * @param text the field text of a removed document.
+	 * @throws IOException
+	 */
+	public void remove(String text) throws IOException {
+		remove(count(text));
+	}
+
+	/**
+	 * @param textFrequencies the term frequencies of an added document (see {@link #count(String)}).
+	 */
+	public void add(Map<String, long[]> textFrequencies) {
+		update(textFrequencies, 1);
+	}
+
+	/**
+	 * @param textFrequencies the term frequencies of a removed document (see {@link #count(String)}).
+	 */
+	public void remove(Map<String, long[]> textFrequencies) {
+		update(textFrequencies, -1);
+	}
+
+	/**
+	 * The method analyzes a field text the same way as the index does, and counts its terms.
+	 * @param text the field text of a document; null for no text.
+	 * @return the frequency of each term of the text.
+	 * @throws IOException
+	 */
+	public Map<String, long[]> count(String text) throws IOException {
+		Map<String, long[]> textFrequencies = new HashMap<>();
+		if (text == null) {
+			return textFrequencies;
+		}
+
+		try (TokenStream tokens = analyzer.tokenStream(field, text)) {
+			CharTermAttribute termAttribute = tokens.addAttribute(CharTermAttribute.class);
+			tokens.reset();
+			while (tokens.incrementToken()) {
+				textFrequencies.computeIfAbsent(termAttribute.toString(), term -> new long[1])[0]++;
+			}
+
+			tokens.end();
+		}
+
+		return textFrequencies;
+	}
+
+	/**
+	 * @param top the amount of desired terms.
+	 * @return the most frequent terms. Ties go to the greater term, like the scan of the index
+	 * (see {@link BasicAlgorithm#scanTopStopWords(org.apache.lucene.store.Directory, int)}).
+	 */
+	public synchronized Set<String> top(int top) {
+		PriorityQueue<Map.Entry<String, long[]>> topTerms = new PriorityQueue<>(top + 1, (first, second) -> {
+			int cmp = Long.compare(first.getValue()[0], second.getValue()[0]);
+			return (cmp != 0) ? cmp : first.getKey().compareTo(second.getKey());
+		});
+		for (Map.Entry<String, long[]> frequency : frequencies.entrySet()) {
+			topTerms.add(frequency);
+			if (topTerms.size() > top) {
+				topTerms.poll();
+			}
+		}
+
+		Set<String> terms = new HashSet<>();
+		for (Map.Entry<String, long[]> frequency : topTerms) {
+			terms.add(frequency.getKey());
+		}
+
+		return terms;
+	}
+
+	private synchronized void update(Map<String, long[]> textFrequencies, int delta) {
+		for (Map.Entry<String, long[]> textFrequency : textFrequencies.entrySet()) {
+			long[] frequency = frequencies.computeIfAbsent(textFrequency.getKey(), term -> new long[1]);
+			frequency[0] += delta * textFrequency.getValue()[0];
+			if (frequency[0] <= 0) {
+				frequencies.remove(textFrequency.getKey());
+			}
+		}
+	}
+
+}
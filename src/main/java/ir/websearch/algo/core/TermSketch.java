@@ -0,0 +1,434 @@
+package ir.websearch.algo.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Approximate total frequencies of the terms of a collection, in bounded memory: a count-min sketch of the frequencies
+ * (with conservative updates), along with a min-heap of the terms of the highest estimated frequencies (the candidates).
+ * The estimates never fall below the true frequencies; their excess is at most about e/width of all the counted terms.
+ * <p>
+ * The sketch is filled while the collection is indexed, through the token streams of a {@link CountingAnalyzer},
+ * and the candidates are saved along with the index (see {@link #encode()}), so the most frequent terms are read back
+ * in O(k) (see {@link #decodeTop(String, int)}), without scanning the term dictionary of the index.
+ * <p>
+ * A sketch is not thread safe. Each indexing thread fills a sketch of its own, and the sketches are summed once indexing is done.
+ */
+class TermSketch {
+
+	private final int width;
+	private final int depth;
+	private final int capacity;
+	private final long[] counts;
+	private final int[] slots;
+	private final Map<Candidate, Candidate> candidates = new HashMap<>();
+	private final Candidate[] heap;
+	private final Candidate probe = new Candidate();
+	private int size = 0;
+	private long total = 0;
+
+	/**
+	 * @param width the amount of counters of each row; a power of 2.
+	 * @param depth the amount of rows (independent hashes) of the sketch.
+	 * @param capacity the amount of candidate terms kept.
+	 */
+	TermSketch(int width, int depth, int capacity) {
+		if (Integer.bitCount(width) != 1) {
+			throw new IllegalArgumentException("The sketch width must be a power of 2: " + width);
+		}
+
+		this.width = width;
+		this.depth = depth;
+		this.capacity = capacity;
+		this.counts = new long[width * depth];
+		this.slots = new int[depth];
+		this.heap = new Candidate[capacity];
+	}
+
+	/**
+	 * The method counts an occurrence of a term.
+	 * @param term the term characters.
+	 * @param length the amount of characters of the term.
+	 */
+	void add(char[] term, int length) {
+		long hash = hash(term, length);
+		long estimate = estimate(hash) + 1;
+		// Conservative update: only the counters below the new estimate are raised.
+		for (int row = 0; row < depth; row++) {
+			if (counts[slots[row]] < estimate) {
+				counts[slots[row]] = estimate;
+			}
+		}
+
+		total++;
+		// The estimate of a candidate only grows, so a term estimated at most as the least candidate is not a candidate.
+		if (size == capacity && estimate <= heap[0].count) {
+			return;
+		}
+
+		probe.set(term, length, hash);
+		Candidate candidate = candidates.get(probe);
+		if (candidate != null) {
+			candidate.count = estimate;
+			siftDown(candidate.index);
+			return;
+		}
+
+		offer(new Candidate(Arrays.copyOf(term, length), length, hash, estimate));
+	}
+
+	/**
+	 * The method sums another sketch of the same dimensions into the sketch. The candidates of both sketches
+	 * are estimated again by the summed counters.
+	 * @param other the other sketch.
+	 */
+	void addAll(TermSketch other) {
+		if (other.width != width || other.depth != depth) {
+			throw new IllegalArgumentException("The sketches dimensions differ.");
+		}
+
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+
+		total += other.total;
+		List<Candidate> terms = new ArrayList<>(candidates.keySet());
+		for (Candidate candidate : other.candidates.keySet()) {
+			if (!candidates.containsKey(candidate)) {
+				terms.add(candidate);
+			}
+		}
+
+		candidates.clear();
+		size = 0;
+		for (Candidate term : terms) {
+			long estimate = estimate(term.hash);
+			if (size < capacity || estimate > heap[0].count) {
+				offer(new Candidate(term.chars, term.length, term.hash, estimate));
+			}
+		}
+	}
+
+	/**
+	 * @return the amount of counted term occurrences.
+	 */
+	long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @param top the amount of desired terms.
+	 * @return the candidate terms of the highest estimated frequencies, most frequent first (ties go to the greater term).
+	 */
+	List<String> top(int top) {
+		List<Candidate> sorted = sortedCandidates();
+		List<String> terms = new ArrayList<>(Math.min(top, sorted.size()));
+		for (int i = 0; i < top && i < sorted.size(); i++) {
+			terms.add(sorted.get(i).toString());
+		}
+
+		return terms;
+	}
+
+	/**
+	 * The method encodes the candidates as space separated pairs of a term and its estimated frequency,
+	 * most frequent first (see {@link #decodeTop(String, int)}).
+	 * @return the encoded candidates.
+	 */
+	String encode() {
+		StringBuilder out = new StringBuilder();
+		for (Candidate candidate : sortedCandidates()) {
+			if (out.length() > 0) {
+				out.append(' ');
+			}
+
+			out.append(candidate.chars, 0, candidate.length).append(' ').append(candidate.count);
+		}
+
+		return out.toString();
+	}
+
+	/**
+	 * The method reads the most frequent terms of encoded candidates (see {@link #encode()}).
+	 * Only the first pairs are read, so the time depends on the amount of desired terms rather than on the amount of candidates.
+	 * @param encoded the encoded candidates.
+	 * @param top the amount of desired terms.
+	 * @return the most frequent terms, in frequency order.
+	 */
+	static Set<String> decodeTop(String encoded, int top) {
+		Set<String> terms = new LinkedHashSet<>();
+		int start = 0;
+		while (terms.size() < top && start < encoded.length()) {
+			int termEnd = encoded.indexOf(' ', start);
+			if (termEnd < 0) {
+				break;
+			}
+
+			terms.add(encoded.substring(start, termEnd));
+			int countEnd = encoded.indexOf(' ', termEnd + 1);
+			start = (countEnd < 0) ? encoded.length() : countEnd + 1;
+		}
+
+		return terms;
+	}
+
+	private List<Candidate> sortedCandidates() {
+		List<Candidate> sorted = new ArrayList<>(candidates.keySet());
+		sorted.sort((first, second) -> {
+			int cmp = Long.compare(second.count, first.count);
+			return (cmp != 0) ? cmp : second.toString().compareTo(first.toString());
+		});
+		return sorted;
+	}
+
+	/**
+	 * The method finds the counters of a term (into {@link #slots}) and estimates its frequency.
+	 * The counter of each row is picked by a combination of the two halves of the term hash (see Kirsch and Mitzenmacher).
+	 * @return the least of the term counters.
+	 */
+	private long estimate(long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			slots[row] = row * width + ((h1 + row * h2) & (width - 1));
+			estimate = Math.min(estimate, counts[slots[row]]);
+		}
+
+		return estimate;
+	}
+
+	/**
+	 * The method adds a new candidate, evicting the least candidate if the heap is full.
+	 */
+	private void offer(Candidate candidate) {
+		if (size == capacity) {
+			candidates.remove(heap[0]);
+			heap[0] = candidate;
+			candidate.index = 0;
+			siftDown(0);
+		} else {
+			heap[size] = candidate;
+			candidate.index = size++;
+			siftUp(candidate.index);
+		}
+
+		candidates.put(candidate, candidate);
+	}
+
+	private void siftUp(int index) {
+		Candidate candidate = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (heap[parent].count <= candidate.count) {
+				break;
+			}
+
+			place(heap[parent], index);
+			index = parent;
+		}
+
+		place(candidate, index);
+	}
+
+	private void siftDown(int index) {
+		Candidate candidate = heap[index];
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= size) {
+				break;
+			}
+
+			if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+				child++;
+			}
+
+			if (candidate.count <= heap[child].count) {
+				break;
+			}
+
+			place(heap[child], index);
+			index = child;
+		}
+
+		place(candidate, index);
+	}
+
+	private void place(Candidate candidate, int index) {
+		heap[index] = candidate;
+		candidate.index = index;
+	}
+
+	/**
+	 * @return a 64 bit hash of the term characters (FNV-1a, followed by the finalization step of MurmurHash3).
+	 */
+	private static long hash(char[] term, int length) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < length; i++) {
+			hash ^= term[i];
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9a34ca1ddb4L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * A candidate term and its estimated frequency. A candidate is also its own key in the candidates map,
+	 * and a reusable probe (see {@link #set(char[], int, long)}) looks the terms up without copying them.
+	 */
+	private static class Candidate {
+
+		private char[] chars;
+		private int length;
+		private long hash;
+		private long count;
+		private int index;
+
+		Candidate() {
+		}
+
+		Candidate(char[] chars, int length, long hash, long count) {
+			set(chars, length, hash);
+			this.count = count;
+		}
+
+		void set(char[] chars, int length, long hash) {
+			this.chars = chars;
+			this.length = length;
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Candidate)) {
+				return false;
+			}
+
+			Candidate other = (Candidate) obj;
+			if (other.hash != hash || other.length != length) {
+				return false;
+			}
+
+			for (int i = 0; i < length; i++) {
+				if (other.chars[i] != chars[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, 0, length);
+		}
+	}
+
+	/**
+	 * An analyzer counting the terms of a field into sketches while delegating the analysis to another analyzer.
+	 * Each thread analyzing the field counts into a sketch of its own (see {@link #getSketch()}).
+	 */
+	static class CountingAnalyzer extends AnalyzerWrapper {
+
+		private final Analyzer delegate;
+		private final String field;
+		private final int width;
+		private final int depth;
+		private final int capacity;
+		private final List<TermSketch> sketches = new ArrayList<>();
+
+		/**
+		 * @param delegate the analyzer of the fields.
+		 * @param field the field whose terms are counted.
+		 * @param width the width of the sketches (see {@link TermSketch#TermSketch(int, int, int)}).
+		 * @param depth the depth of the sketches.
+		 * @param capacity the amount of candidate terms kept.
+		 */
+		CountingAnalyzer(Analyzer delegate, String field, int width, int depth, int capacity) {
+			// The token stream components are kept per thread and field, so each thread counts the field into its own sketch.
+			super(PER_FIELD_REUSE_STRATEGY);
+			this.delegate = delegate;
+			this.field = field;
+			this.width = width;
+			this.depth = depth;
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected Analyzer getWrappedAnalyzer(String fieldName) {
+			return delegate;
+		}
+
+		@Override
+		protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+			if (!field.equals(fieldName)) {
+				return components;
+			}
+
+			TermSketch sketch = new TermSketch(width, depth, capacity);
+			synchronized (sketches) {
+				sketches.add(sketch);
+			}
+
+			return new TokenStreamComponents(components.getTokenizer(), new CountingFilter(components.getTokenStream(), sketch));
+		}
+
+		/**
+		 * @return the sum of the sketches of all the threads. Must be called once the analysis is done.
+		 */
+		TermSketch getSketch() {
+			TermSketch sum = new TermSketch(width, depth, capacity);
+			synchronized (sketches) {
+				for (TermSketch sketch : sketches) {
+					sum.addAll(sketch);
+				}
+			}
+
+			return sum;
+		}
+	}
+
+	private static final class CountingFilter extends TokenFilter {
+
+		private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+		private final TermSketch sketch;
+
+		CountingFilter(TokenStream input, TermSketch sketch) {
+			super(input);
+			this.sketch = sketch;
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException {
+			if (!input.incrementToken()) {
+				return false;
+			}
+
+			sketch.add(termAttribute.buffer(), termAttribute.length());
+			return true;
+		}
+	}
+
+}
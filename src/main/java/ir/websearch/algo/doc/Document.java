@@ -1,38 +1,55 @@
 package ir.websearch.algo.doc;
 
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A document of the collection: its ID, title and abstract. The text of the document is the title and the abstract,
+ * separated by a space.
+ * <p>
+ * The contents are held once, as UTF-8 bytes: the text bytes, whose prefix is the title and whose suffix is the abstract.
+ * The bytes are either an array of the document, or a range of a chunk shared by many documents (see {@link DocumentArena}).
+ * The title, abstract and text are views over the bytes, decoded into strings on each call.
+ */
 public class Document {
-	
+
 	public final static String ID_FIELD = "id";
 	public final static String TITLE_FIELD = "title";
 	public final static String ABSTRACT_FIELD = "abstract";
 	public final static String TEXT_FIELD = "text";
 
-	private final Integer id;
-	private final String title;
-	private final String abst;
-	private final String text;
-	
+	private final int id;
+	private final byte[] content;
+	private final int offset;
+	private final int titleLength;
+	private final int textLength;
+
 	public Integer getId() {
 		return id;
 	}
 
 	public String getTitle() {
-		return title;
+		return decode(offset, titleLength);
 	}
 
 	public String getAbst() {
-		return abst;
+		return decode(offset + titleLength + 1, textLength - titleLength - 1);
 	}
-	
+
 	public String getText() {
-		return text;
+		return decode(offset, textLength);
+	}
+
+	private String decode(int start, int length) {
+		return new String(content, start, length, StandardCharsets.UTF_8);
 	}
 
 	public static class Builder {
 		private Integer id;
-		private String title;
-		private String abst;
-		private String text;
+		private String title = "";
+		private String abst = "";
+		private CharSequence text = null;
+		private int titleChars = 0;
+		private DocumentArena arena = null;
 
 		public Builder id(Integer id) {
 			this.id = id;
@@ -48,22 +65,54 @@ public class Document {
 			this.abst = abst;
 			return this;
 		}
-		
-		public Builder text(String text) {
+
+		/**
+		 * Sets the title and abstract at once, from the text of the document. Replaces {@link #title(String)} and {@link #abst(String)}.
+		 * The text is read by {@link #build()}, hence it may be a reused buffer.
+		 * @param text the document text: the title, a space and the abstract.
+		 * @param titleChars the amount of characters of the title.
+		 */
+		public Builder text(CharSequence text, int titleChars) {
 			this.text = text;
+			this.titleChars = titleChars;
+			return this;
+		}
+
+		/**
+		 * @param arena the arena to store the contents in; null to store them in an array of the document.
+		 */
+		public Builder arena(DocumentArena arena) {
+			this.arena = arena;
 			return this;
 		}
 
 		public Document build() {
-			return new Document(this);
+			CharSequence docText = (text != null) ? text : title + " " + abst;
+			int docTitleChars = (text != null) ? titleChars : title.length();
+			if (arena != null) {
+				return arena.add(id, docText, docTitleChars);
+			}
+
+			int titleLength = DocumentArena.utf8Length(docText, 0, docTitleChars);
+			byte[] content = new byte[titleLength + DocumentArena.utf8Length(docText, docTitleChars, docText.length())];
+			DocumentArena.encode(docText, 0, docText.length(), content, 0);
+			return new Document(id, content, 0, titleLength, content.length);
 		}
 	}
 
-	private Document(Builder builder) {
-		this.id = builder.id;
-		this.title = builder.title;
-		this.abst = builder.abst;
-		this.text = builder.text;
+	/**
+	 * @param id the document ID.
+	 * @param content the UTF-8 bytes holding the text of the document.
+	 * @param offset the index of the text in the bytes.
+	 * @param titleLength the amount of bytes of the title, the prefix of the text.
+	 * @param textLength the amount of bytes of the text.
+	 */
+	Document(int id, byte[] content, int offset, int titleLength, int textLength) {
+		this.id = id;
+		this.content = content;
+		this.offset = offset;
+		this.titleLength = titleLength;
+		this.textLength = textLength;
 	}
 
 }
@@ -0,0 +1,120 @@
+package ir.websearch.algo.doc;
+
+/**
+ * A shared store of the contents of many documents, as UTF-8 bytes packed into large chunks.
+ * A document stored in the arena holds a reference to its chunk and its offset, rather than an array or strings of its own,
+ * hence a loaded collection takes about a byte per (ASCII) character, plus a small fixed overhead per document.
+ * <p>
+ * The arena only grows: the chunks are freed once all of their documents are unreachable.
+ * It suits collections loaded at once (see {@link DocumentsParser#parse()}); a document streamed through the ingestion
+ * is better off with its own array (see {@link Document.Builder#build()}).
+ * The arena is thread safe.
+ */
+public class DocumentArena {
+
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	private byte[] chunk = new byte[0];
+	private int used = 0;
+	private long size = 0;
+
+	/**
+	 * The method stores the contents of a document in the arena.
+	 * @param id the document ID.
+	 * @param text the document text: the title, a space and the abstract.
+	 * @param titleChars the amount of characters of the title.
+	 * @return the document, a view over the stored contents.
+	 */
+	public Document add(int id, CharSequence text, int titleChars) {
+		int titleLength = utf8Length(text, 0, titleChars);
+		int textLength = titleLength + utf8Length(text, titleChars, text.length());
+		byte[] content;
+		int offset;
+		synchronized (this) {
+			if (textLength > CHUNK_SIZE) {
+				// A huge document gets a chunk of its own, so the current chunk keeps filling up.
+				content = new byte[textLength];
+				offset = 0;
+			} else {
+				if (chunk.length - used < textLength) {
+					chunk = new byte[CHUNK_SIZE];
+					used = 0;
+				}
+
+				content = chunk;
+				offset = used;
+				used += textLength;
+			}
+
+			size += textLength;
+		}
+
+		// The reserved range is written by the adding thread only.
+		encode(text, 0, text.length(), content, offset);
+		return new Document(id, content, offset, titleLength, textLength);
+	}
+
+	/**
+	 * @return the amount of content bytes stored in the arena.
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * @return the length of the UTF-8 encoding of a range of characters (unpaired surrogates are encoded as '?', 
+	 * like {@link String#getBytes}).
+	 */
+	static int utf8Length(CharSequence text, int start, int end) {
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				length++;
+			} else {
+				length += 3;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * The method encodes a range of characters as UTF-8.
+	 * @return the index following the encoded characters.
+	 */
+	static int encode(CharSequence text, int start, int end, byte[] out, int offset) {
+		int idx = offset;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				out[idx++] = (byte) c;
+			} else if (c < 0x800) {
+				out[idx++] = (byte) (0xC0 | (c >> 6));
+				out[idx++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				out[idx++] = (byte) (0xF0 | (codePoint >> 18));
+				out[idx++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				out[idx++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				out[idx++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				out[idx++] = '?';
+			} else {
+				out[idx++] = (byte) (0xE0 | (c >> 12));
+				out[idx++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				out[idx++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+
+		return idx;
+	}
+
+}
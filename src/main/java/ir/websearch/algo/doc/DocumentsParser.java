@@ -1,20 +1,41 @@
 package ir.websearch.algo.doc;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
-
-import org.apache.commons.io.FileUtils;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import ir.websearch.algo.doc.Document.Builder;
-import ir.websearch.algo.helper.StringUtils;
+import ir.websearch.algo.helper.CollectionUtils;
+import ir.websearch.algo.helper.RecordReader;
+import ir.websearch.algo.helper.TextNormalizer;
 
-public class DocumentsParser {
+/**
+ * Parser of CACM style document files.
+ * Documents are read incrementally, one record at a time, either through {@link #iterator()} / {@link #stream()}
+ * or loaded all at once through {@link #parse()}.
+ * The file may be gzip or zstd compressed, it is then decompressed while it is read (see {@link RecordReader#RecordReader(File, String)}).
+ */
+public class DocumentsParser implements Iterable<Document> {
 	
-	private static final String DOC_SEPERATOR = new String(new char[] { 127 });
 	private static final String DOC_PREFIX = ".I";
 	private static final String TEXT_PREFIX = ".W";
-	private static final String REMOVE_CHARS_REGEX = "[^-A-Za-z0-9\\s]";
+	/**
+	 * Splits the record into its ID and text parts. Matches any character followed by 'W', like the former {@code split(".W")}.
+	 */
+	private static final Pattern TEXT_PREFIX_PATTERN = Pattern.compile(TEXT_PREFIX);
+	/**
+	 * The normalized text of the document being parsed, reused by the parsing thread.
+	 */
+	private static final ThreadLocal<StringBuilder> TEXT_BUFFERS = ThreadLocal.withInitial(StringBuilder::new);
 	
 	private final String docsFile;
 	
@@ -22,38 +43,24 @@ public class DocumentsParser {
 		this.docsFile = docsFile;
 	}
 	
+	/**
+	 * @return true if the documents file exists and can be read.
+	 */
+	public boolean canRead() {
+		return new File(docsFile).canRead();
+	}
+	
+	/**
+	 * The method loads all the documents of the file into memory.
+	 * The contents of the documents are packed into a shared {@link DocumentArena}.
+	 * @return the collection of documents; null if the file could not be read or parsed.
+	 */
 	public Collection<Document> parse() {
 		Collection<Document> documents = new ArrayList<Document>();
-
-		File file = new File(docsFile);
-		try {
-			String docsJoin = FileUtils.readFileToString(file);
-			docsJoin = docsJoin.replace(DOC_PREFIX, DOC_SEPERATOR);
-			docsJoin = docsJoin.trim();
-			String[] docs = docsJoin.split("(?=" + DOC_SEPERATOR + ")");
-			for (String doc : docs) {
-				Document.Builder docBuilder = new Builder();
-				String[] idTextSplit =  doc.split(TEXT_PREFIX);
-				String docIDPart = idTextSplit[0];
-				Integer docID = Integer.parseInt(StringUtils.findRegexFirstMatch("\\d+", docIDPart));
-				docBuilder.id(docID);
-				
-				String textPart = idTextSplit[1];
-				String[] titelAbstructSplit = textPart.split("\\.", 2);
-				String title = titelAbstructSplit[0];
-				title = StringUtils.whitespacesToSingleSpace(title);
-				title = StringUtils.removeRedundantChars(title, REMOVE_CHARS_REGEX);
-				docBuilder.title(title);
-				
-				String abst = titelAbstructSplit[1];
-				abst = StringUtils.whitespacesToSingleSpace(abst);
-				abst = StringUtils.removeRedundantChars(abst, REMOVE_CHARS_REGEX);
-				docBuilder.abst(abst);
-				
-				String text = title + " " + abst;
-				docBuilder.text(text);
-				
-				documents.add(docBuilder.build());
+		DocumentArena arena = new DocumentArena();
+		try (RecordReader records = records()) {
+			while (records.hasNext()) {
+				documents.add(parseDocument(records.next(), arena));
 			}
 		} catch (Exception e) {
 			documents = null;
@@ -61,5 +68,87 @@ public class DocumentsParser {
 		
 		return documents;
 	}
+	
+	/**
+	 * The method opens the documents file and returns an iterator pulling one document at a time.
+	 * The file is closed once the iterator is exhausted.
+	 * @throws UncheckedIOException if the file can not be read.
+	 */
+	@Override
+	public Iterator<Document> iterator() {
+		return CollectionUtils.map(records(), DocumentsParser::parseDocument);
+	}
+	
+	/**
+	 * The method opens the documents file and returns a sequential stream of its documents.
+	 * The stream should be closed if it is not fully consumed.
+	 * @throws UncheckedIOException if the file can not be read.
+	 */
+	public Stream<Document> stream() {
+		RecordReader records = records();
+		Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(records::close).map(DocumentsParser::parseDocument);
+	}
+	
+	/**
+	 * The method opens the documents file for reading raw (unparsed) document records.
+	 * @return a reader of raw document records.
+	 * @throws UncheckedIOException if the file can not be read.
+	 */
+	public RecordReader records() {
+		try {
+			return new RecordReader(new File(docsFile), DOC_PREFIX);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * @param reader the reader of documents, in the documents file format.
+	 * @return a reader of raw document records.
+	 */
+	public static RecordReader records(Reader reader) {
+		return new RecordReader(reader, DOC_PREFIX);
+	}
+	
+	/**
+	 * The method parses a single raw document record.
+	 * @param record the document record (starting with the document prefix).
+	 * @return the parsed document.
+	 */
+	public static Document parseDocument(String record) {
+		return parseDocument(record, null);
+	}
+	
+	/**
+	 * The method parses a single raw document record.
+	 * @param record the document record (starting with the document prefix).
+	 * @param arena the arena to store the document contents in; null to store them in an array of the document.
+	 * @return the parsed document.
+	 */
+	public static Document parseDocument(String record, DocumentArena arena) {
+		Document.Builder docBuilder = new Builder().arena(arena);
+		String[] idTextSplit = TEXT_PREFIX_PATTERN.split(record);
+		String docIDPart = idTextSplit[0];
+		docBuilder.id(TextNormalizer.parseFirstInt(docIDPart, 0, docIDPart.length()));
+		
+		// The title ends at the first '.' of the text, the rest of the text is the abstract.
+		String textPart = idTextSplit[1];
+		int titleEnd = textPart.indexOf('.');
+		if (titleEnd < 0) {
+			throw new IllegalArgumentException("No title and abstract in document: " + docIDPart.trim() + ".");
+		}
+		
+		// The title and the abstract are normalized into a single buffer, separated by a space, which is the document text.
+		StringBuilder text = TEXT_BUFFERS.get();
+		text.setLength(0);
+		TextNormalizer.normalize(textPart, 0, titleEnd, text);
+		int titleChars = text.length();
+		text.append(' ');
+		TextNormalizer.normalize(textPart, titleEnd + 1, textPart.length(), text);
+		docBuilder.text(text, titleChars);
+		
+		return docBuilder.build();
+	}
 
 }
@@ -1,6 +1,8 @@
 package ir.websearch.algo.helper;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Function;
 
 public class CollectionUtils {
 	
@@ -12,4 +14,24 @@ public class CollectionUtils {
 	    return list != null && !list.isEmpty();
 	}
 	
-}
\ No newline at end of file
+	/**
+	 * The method creates a lazy view of the given iterator, applying the mapper on each element as it is pulled.
+	 * @param iterator the source iterator.
+	 * @param mapper the function to apply on each element.
+	 * @return an iterator over the mapped elements.
+	 */
+	public static <T, R> Iterator<R> map(Iterator<T> iterator, Function<? super T, ? extends R> mapper) {
+		return new Iterator<R>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public R next() {
+				return mapper.apply(iterator.next());
+			}
+		};
+	}
+	
+}
@@ -0,0 +1,207 @@
+package ir.websearch.algo.helper;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * Helper for reading input files which may be compressed.
+ * The compression is detected by the magic bytes at the start of the file (rather than by the file name):
+ * gzip and zstd files are decompressed on the fly, any other file is read as is.
+ * <p>
+ * A compressed file is decompressed by a thread of its own, a few chunks ahead of the reader,
+ * so the decompression overlaps the parsing of the records already read.
+ */
+public class CompressedInput {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int CHUNKS_AHEAD = 4;
+	private static final int GZIP_MAGIC = 0x1F8B;
+	private static final int ZSTD_MAGIC = 0x28B52FFD;
+
+	/**
+	 * The method opens a file for reading its (decompressed) contents.
+	 * @param file the file to read, plain or compressed.
+	 * @return the stream of the file contents. The caller is responsible for closing it.
+	 * @throws IOException if the file can not be opened.
+	 */
+	public static InputStream open(File file) throws IOException {
+		BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try {
+			int magic = peekMagic(in);
+			if ((magic >>> 16) == GZIP_MAGIC) {
+				return new ReadAheadInputStream(new GZIPInputStream(in, BUFFER_SIZE), file.getName());
+			} else if (magic == ZSTD_MAGIC) {
+				return new ReadAheadInputStream(new ZstdInputStream(in), file.getName());
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+
+		return in;
+	}
+
+	/**
+	 * @return the first 4 bytes of the stream (big endian, zero padded if the stream is shorter), leaving the stream at its start.
+	 */
+	private static int peekMagic(BufferedInputStream in) throws IOException {
+		in.mark(4);
+		int magic = 0;
+		for (int i = 0; i < 4; i++) {
+			int b = in.read();
+			magic = (magic << 8) | Math.max(b, 0);
+		}
+
+		in.reset();
+		return magic;
+	}
+
+	/**
+	 * A stream read ahead of its consumer by a thread of its own, through a bounded queue of recycled chunks.
+	 * A failure of the source is thrown to the consumer once the chunks read before it are consumed.
+	 */
+	private static class ReadAheadInputStream extends InputStream {
+
+		private static final Chunk END_OF_STREAM = new Chunk(0);
+
+		private final BlockingQueue<Chunk> fullChunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD + 1);
+		private final BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD + 1);
+		private final Thread reader;
+		private volatile IOException failure = null;
+		private Chunk chunk = null;
+		private int chunkPos = 0;
+		private boolean eof = false;
+
+		ReadAheadInputStream(InputStream source, String name) {
+			for (int i = 0; i < CHUNKS_AHEAD; i++) {
+				freeChunks.add(new Chunk(BUFFER_SIZE));
+			}
+
+			reader = new Thread(() -> readAhead(source), "read-ahead-" + name);
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		private void readAhead(InputStream source) {
+			try (InputStream in = source) {
+				while (true) {
+					Chunk free = freeChunks.take();
+					free.length = 0;
+					int read = 0;
+					while (free.length < free.data.length && (read = in.read(free.data, free.length, free.data.length - free.length)) >= 0) {
+						free.length += read;
+					}
+
+					if (free.length > 0) {
+						fullChunks.put(free);
+					}
+
+					if (read < 0) {
+						break;
+					}
+				}
+			} catch (InterruptedException e) {
+				// The stream was closed.
+				return;
+			} catch (IOException e) {
+				failure = e;
+			}
+
+			try {
+				fullChunks.put(END_OF_STREAM);
+			} catch (InterruptedException e) {
+				// The stream was closed.
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk()) {
+				return -1;
+			}
+
+			return chunk.data[chunkPos++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			if (!nextChunk()) {
+				return -1;
+			}
+
+			int read = Math.min(len, chunk.length - chunkPos);
+			System.arraycopy(chunk.data, chunkPos, b, off, read);
+			chunkPos += read;
+			return read;
+		}
+
+		/**
+		 * The method makes sure the current chunk has unread bytes, taking the next chunk once it is consumed.
+		 * @return false at the end of the stream.
+		 */
+		private boolean nextChunk() throws IOException {
+			if (chunk != null && chunkPos < chunk.length) {
+				return true;
+			}
+
+			if (eof) {
+				return false;
+			}
+
+			if (chunk != null) {
+				freeChunks.add(chunk);
+				chunk = null;
+			}
+
+			try {
+				Chunk next = fullChunks.take();
+				if (next == END_OF_STREAM) {
+					eof = true;
+					if (failure != null) {
+						throw failure;
+					}
+
+					return false;
+				}
+
+				chunk = next;
+				chunkPos = 0;
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Reading was interrupted.");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			// The reader closes the source once it stops.
+			eof = true;
+			reader.interrupt();
+		}
+	}
+
+	private static class Chunk {
+
+		private final byte[] data;
+		private int length = 0;
+
+		Chunk(int size) {
+			this.data = new byte[size];
+		}
+	}
+
+}
@@ -3,6 +3,16 @@ package ir.websearch.algo.helper;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriterConfig;
 
 public class InputParams {
 
@@ -10,6 +20,34 @@ public class InputParams {
 	private final String docsFileName;
 	private final String outputFileName;
 	private final String retrievalAlgorithm;
+	private final int parseThreads;
+	private final int indexThreads;
+	private final int ingestQueueDepth;
+	private final String indexDir;
+	private final int searchThreads;
+	private final String schemaProfile;
+	private final int serverPort;
+	private final int refreshDelayMillis;
+	private final int shards;
+	private final int slice;
+	private final int slices;
+	private final int workerPort;
+	private final List<InetSocketAddress> workers;
+	private final int workerTimeoutMillis;
+	private final boolean sharedScan;
+	private final int queryCacheSize;
+	private final int resultCacheSize;
+	private final int hits;
+	private final int pageSize;
+	private final int queryTimeoutMillis;
+	private final int batchTimeoutMillis;
+	private final double ramBufferSizeMB;
+	private final String mergePolicy;
+	private final int mergeThreads;
+	private final int forceMergeSegments;
+	private final Map<String, IndexOptions> fieldIndexOptions;
+	private final Map<String, Boolean> fieldOmitNorms;
+	private final Map<String, Float> fieldBoosts;
 
 	public String getQueryFileName() {
 		return queryFileName;
@@ -26,6 +64,210 @@ public class InputParams {
 	public String getRetrievalAlgorithm() {
 		return retrievalAlgorithm;
 	}
+	
+	/**
+	 * @return the amount of ingestion workers parsing and normalizing document records.
+	 */
+	public int getParseThreads() {
+		return parseThreads;
+	}
+	
+	/**
+	 * @return the amount of ingestion workers adding documents to the index writer.
+	 */
+	public int getIndexThreads() {
+		return indexThreads;
+	}
+	
+	/**
+	 * @return the capacity of each of the bounded queues connecting the ingestion stages.
+	 */
+	public int getIngestQueueDepth() {
+		return ingestQueueDepth;
+	}
+	
+	/**
+	 * @return the file system path of a persistent index; null for an in-memory index.
+	 */
+	public String getIndexDir() {
+		return indexDir;
+	}
+	
+	/**
+	 * @return the amount of threads executing the queries of a batch concurrently.
+	 */
+	public int getSearchThreads() {
+		return searchThreads;
+	}
+	
+	/**
+	 * @return the index schema profile ("full" or "lean").
+	 */
+	public String getSchemaProfile() {
+		return schemaProfile;
+	}
+	
+	/**
+	 * @return the local port of the search service; 0 to run the query file as a batch and exit.
+	 */
+	public int getServerPort() {
+		return serverPort;
+	}
+	
+	/**
+	 * @return the maximal delay, in milliseconds, until an incremental index update becomes searchable.
+	 */
+	public int getRefreshDelayMillis() {
+		return refreshDelayMillis;
+	}
+	
+	/**
+	 * @return the amount of index shards the documents are partitioned across.
+	 */
+	public int getShards() {
+		return shards;
+	}
+	
+	/**
+	 * @return the slice of the collection indexed by this process, out of {@link #getSlices()} slices.
+	 */
+	public int getSlice() {
+		return slice;
+	}
+	
+	/**
+	 * @return the amount of slices the collection is partitioned into; 1 if this process indexes the whole collection.
+	 */
+	public int getSlices() {
+		return slices;
+	}
+	
+	/**
+	 * @return the local port on which this process serves its slice as a shard worker; 0 if it is not a shard worker.
+	 */
+	public int getWorkerPort() {
+		return workerPort;
+	}
+	
+	/**
+	 * @return the addresses of the shard workers a coordinator distributes the queries to; empty for a local search.
+	 */
+	public List<InetSocketAddress> getWorkers() {
+		return workers;
+	}
+	
+	/**
+	 * @return the time, in milliseconds, a coordinator waits for a shard worker to connect or respond, before skipping it.
+	 */
+	public int getWorkerTimeoutMillis() {
+		return workerTimeoutMillis;
+	}
+	
+	/**
+	 * @return whether batches of queries are searched together, scanning the postings of a term shared by the queries once.
+	 * Only the memory retrieval algorithm supports the shared scan; a run of another algorithm with the shared scan is rejected.
+	 */
+	public boolean isSharedScan() {
+		return sharedScan;
+	}
+	
+	/**
+	 * @return the maximal amount of compiled queries kept for repeated query texts; 0 to compile every query.
+	 */
+	public int getQueryCacheSize() {
+		return queryCacheSize;
+	}
+	
+	/**
+	 * @return the maximal amount of query results kept for repeated queries, until the index changes; 0 to search every query.
+	 */
+	public int getResultCacheSize() {
+		return resultCacheSize;
+	}
+	
+	/**
+	 * @return the amount of documents retrieved for each query which does not set its own.
+	 */
+	public int getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return the amount of documents collected at once while retrieving a query; deeper results are collected 
+	 * page after page, from the last document of the previous page.
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+	
+	/**
+	 * @return the time budget of each query, in milliseconds, after which its best documents so far are returned as a 
+	 * partial result; 0 for no limit.
+	 */
+	public int getQueryTimeoutMillis() {
+		return queryTimeoutMillis;
+	}
+	
+	/**
+	 * @return the time budget of the whole query set, in milliseconds, after which the remaining queries return partial 
+	 * results; 0 for no limit.
+	 */
+	public int getBatchTimeoutMillis() {
+		return batchTimeoutMillis;
+	}
+	
+	/**
+	 * @return the memory the index writer buffers documents in before flushing them as a new segment, in MB.
+	 */
+	public double getRamBufferSizeMB() {
+		return ramBufferSizeMB;
+	}
+	
+	/**
+	 * @return the merge policy of the index writer: tiered, logByteSize, logDoc or none.
+	 */
+	public String getMergePolicy() {
+		return mergePolicy;
+	}
+	
+	/**
+	 * @return the maximal amount of threads merging the index segments concurrently; 0 to pick it by the disk and processors.
+	 */
+	public int getMergeThreads() {
+		return mergeThreads;
+	}
+	
+	/**
+	 * @return the maximal amount of segments of the index before searching, merging the segments down if there are more;
+	 * 0 to search the index as built.
+	 */
+	public int getForceMergeSegments() {
+		return forceMergeSegments;
+	}
+	
+	/**
+	 * @param field the index field name.
+	 * @return the index options configured for the field; null if not configured.
+	 */
+	public IndexOptions getFieldIndexOptions(String field) {
+		return fieldIndexOptions.get(field);
+	}
+	
+	/**
+	 * @param field the index field name.
+	 * @return whether norms are omitted for the field; null if not configured.
+	 */
+	public Boolean getFieldOmitNorms(String field) {
+		return fieldOmitNorms.get(field);
+	}
+	
+	/**
+	 * @return the query boosts configured per index field, by field name. A configured field is queried along with 
+	 * the fields of the search algorithm.
+	 */
+	public Map<String, Float> getFieldBoosts() {
+		return fieldBoosts;
+	}
 
 	public static class Parser {
 
@@ -34,10 +276,94 @@ public class InputParams {
 		private static final String DOCS_FILE_KEY = "docsFile";
 		private static final String QUERY_FILE_KEY = "queryFile";
 		
+		// Optional parameters.
+		private static final String PARSE_THREADS_KEY = "parseThreads";
+		private static final String INDEX_THREADS_KEY = "indexThreads";
+		private static final String INGEST_QUEUE_DEPTH_KEY = "ingestQueueDepth";
+		private static final String INDEX_DIR_KEY = "indexDir";
+		private static final String SEARCH_THREADS_KEY = "searchThreads";
+		private static final String SCHEMA_PROFILE_KEY = "schemaProfile";
+		private static final String SERVER_PORT_KEY = "serverPort";
+		private static final String REFRESH_DELAY_MILLIS_KEY = "refreshDelayMillis";
+		private static final String SHARDS_KEY = "shards";
+		private static final String SLICE_KEY = "slice";
+		private static final String SLICES_KEY = "slices";
+		private static final String WORKER_PORT_KEY = "workerPort";
+		private static final String WORKERS_KEY = "workers";
+		private static final String WORKER_TIMEOUT_MILLIS_KEY = "workerTimeoutMillis";
+		private static final String SHARED_SCAN_KEY = "sharedScan";
+		private static final String QUERY_CACHE_SIZE_KEY = "queryCacheSize";
+		private static final String RESULT_CACHE_SIZE_KEY = "resultCacheSize";
+		private static final String HITS_KEY = "hits";
+		private static final String PAGE_SIZE_KEY = "pageSize";
+		private static final String QUERY_TIMEOUT_MILLIS_KEY = "queryTimeoutMillis";
+		private static final String BATCH_TIMEOUT_MILLIS_KEY = "batchTimeoutMillis";
+		private static final String RAM_BUFFER_SIZE_MB_KEY = "ramBufferSizeMB";
+		private static final String MERGE_POLICY_KEY = "mergePolicy";
+		private static final String MERGE_THREADS_KEY = "mergeThreads";
+		private static final String FORCE_MERGE_SEGMENTS_KEY = "forceMergeSegments";
+		private static final String FIELD_INDEX_OPTIONS_KEY_PREFIX = "indexOptions.";
+		private static final String FIELD_OMIT_NORMS_KEY_PREFIX = "omitNorms.";
+		private static final String FIELD_BOOST_KEY_PREFIX = "boost.";
+		
+		private static final int DEFAULT_PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+		private static final int DEFAULT_INDEX_THREADS = Runtime.getRuntime().availableProcessors();
+		private static final int DEFAULT_INGEST_QUEUE_DEPTH = 1024;
+		private static final int DEFAULT_SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+		private static final String DEFAULT_SCHEMA_PROFILE = "full";
+		private static final int DEFAULT_SERVER_PORT = 0;
+		private static final int DEFAULT_REFRESH_DELAY_MILLIS = 1000;
+		private static final int DEFAULT_SHARDS = 1;
+		private static final int DEFAULT_SLICE = 0;
+		private static final int DEFAULT_SLICES = 1;
+		private static final int DEFAULT_WORKER_PORT = 0;
+		private static final int DEFAULT_WORKER_TIMEOUT_MILLIS = 5000;
+		private static final int DEFAULT_QUERY_CACHE_SIZE = 1024;
+		private static final int DEFAULT_RESULT_CACHE_SIZE = 4096;
+		private static final int DEFAULT_HITS = 10;
+		private static final int DEFAULT_PAGE_SIZE = 1000;
+		private static final int DEFAULT_QUERY_TIMEOUT_MILLIS = 0;
+		private static final int DEFAULT_BATCH_TIMEOUT_MILLIS = 0;
+		private static final double DEFAULT_RAM_BUFFER_SIZE_MB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+		private static final String DEFAULT_MERGE_POLICY = "tiered";
+		private static final List<String> MERGE_POLICIES = Arrays.asList("tiered", "logByteSize", "logDoc", "none");
+		private static final int DEFAULT_MERGE_THREADS = 0;
+		private static final int DEFAULT_FORCE_MERGE_SEGMENTS = 0;
+		
 		private String queryFileName = null;
 		private String docsFileName = null;
 		private String outputFileName = null;
 		private String retrievalAlgorithm = null;
+		private int parseThreads;
+		private int indexThreads;
+		private int ingestQueueDepth;
+		private String indexDir;
+		private int searchThreads;
+		private String schemaProfile;
+		private int serverPort;
+		private int refreshDelayMillis;
+		private int shards;
+		private int slice;
+		private int slices;
+		private int workerPort;
+		private final List<InetSocketAddress> workers = new ArrayList<>();
+		private int workerTimeoutMillis;
+		private boolean sharedScan;
+		private int queryCacheSize;
+		private int resultCacheSize;
+		private int hits;
+		private int pageSize;
+		private int queryTimeoutMillis;
+		private int batchTimeoutMillis;
+		private double ramBufferSizeMB;
+		private String mergePolicy;
+		private int mergeThreads;
+		private int forceMergeSegments;
+		private final Map<String, IndexOptions> fieldIndexOptions = new HashMap<>();
+		private final Map<String, Boolean> fieldOmitNorms = new HashMap<>();
+		// Sorted by field name, so the extra query fields are queried in the same order on every run.
+		private final Map<String, Float> fieldBoosts = new TreeMap<>();
+		private final Map<String, String> optionalParams = new HashMap<>();
 		private String fileName;
 
 		public Parser(String fileName) {
@@ -66,12 +392,14 @@ public class InputParams {
 					if (retrievalAlgorithm == null) {
 						retrievalAlgorithm = getParamByKey(line, RETRIEVAL_ALGORITHM_KEY);
 					}
+					
+					addOptionalParam(line);
 				}
 				
 				if (isInputValid()) {
 					inputParams = new InputParams(this);
 				}				
-			} catch (IOException e) {
+			} catch (IOException | IllegalArgumentException e) {
 			} finally {
 				if (reader != null) {
 					try {
@@ -96,10 +424,85 @@ public class InputParams {
 			return param;
 		}
 		
+		/**
+		 * The method records a "key=value" line as an optional parameter. The first occurrence of a key wins.
+		 * @param line the parameter file line.
+		 */
+		private void addOptionalParam(String line) {
+			int separatorIdx = line.indexOf('=');
+			if (separatorIdx > 0) {
+				optionalParams.putIfAbsent(line.substring(0, separatorIdx).trim(), line.substring(separatorIdx + 1).trim());
+			}
+		}
+		
+		private int getIntParam(String paramKey, int defaultValue) {
+			String param = optionalParams.get(paramKey);
+			return (param == null || param.isEmpty()) ? defaultValue : Integer.parseInt(param);
+		}
+		
+		private double getDoubleParam(String paramKey, double defaultValue) {
+			String param = optionalParams.get(paramKey);
+			return (param == null || param.isEmpty()) ? defaultValue : Double.parseDouble(param);
+		}
+		
 		private boolean isInputValid() {
 			boolean retval = false;
 			
-			if (this.docsFileName != null && this.fileName != null && this.outputFileName != null && this.queryFileName != null && this.retrievalAlgorithm != null) {
+			parseThreads = getIntParam(PARSE_THREADS_KEY, DEFAULT_PARSE_THREADS);
+			indexThreads = getIntParam(INDEX_THREADS_KEY, DEFAULT_INDEX_THREADS);
+			ingestQueueDepth = getIntParam(INGEST_QUEUE_DEPTH_KEY, DEFAULT_INGEST_QUEUE_DEPTH);
+			indexDir = optionalParams.get(INDEX_DIR_KEY);
+			searchThreads = getIntParam(SEARCH_THREADS_KEY, DEFAULT_SEARCH_THREADS);
+			schemaProfile = optionalParams.getOrDefault(SCHEMA_PROFILE_KEY, DEFAULT_SCHEMA_PROFILE);
+			serverPort = getIntParam(SERVER_PORT_KEY, DEFAULT_SERVER_PORT);
+			refreshDelayMillis = getIntParam(REFRESH_DELAY_MILLIS_KEY, DEFAULT_REFRESH_DELAY_MILLIS);
+			shards = getIntParam(SHARDS_KEY, DEFAULT_SHARDS);
+			slice = getIntParam(SLICE_KEY, DEFAULT_SLICE);
+			slices = getIntParam(SLICES_KEY, DEFAULT_SLICES);
+			workerPort = getIntParam(WORKER_PORT_KEY, DEFAULT_WORKER_PORT);
+			workerTimeoutMillis = getIntParam(WORKER_TIMEOUT_MILLIS_KEY, DEFAULT_WORKER_TIMEOUT_MILLIS);
+			sharedScan = Boolean.parseBoolean(optionalParams.get(SHARED_SCAN_KEY));
+			queryCacheSize = getIntParam(QUERY_CACHE_SIZE_KEY, DEFAULT_QUERY_CACHE_SIZE);
+			resultCacheSize = getIntParam(RESULT_CACHE_SIZE_KEY, DEFAULT_RESULT_CACHE_SIZE);
+			hits = getIntParam(HITS_KEY, DEFAULT_HITS);
+			pageSize = getIntParam(PAGE_SIZE_KEY, DEFAULT_PAGE_SIZE);
+			queryTimeoutMillis = getIntParam(QUERY_TIMEOUT_MILLIS_KEY, DEFAULT_QUERY_TIMEOUT_MILLIS);
+			batchTimeoutMillis = getIntParam(BATCH_TIMEOUT_MILLIS_KEY, DEFAULT_BATCH_TIMEOUT_MILLIS);
+			ramBufferSizeMB = getDoubleParam(RAM_BUFFER_SIZE_MB_KEY, DEFAULT_RAM_BUFFER_SIZE_MB);
+			mergePolicy = optionalParams.getOrDefault(MERGE_POLICY_KEY, DEFAULT_MERGE_POLICY);
+			mergeThreads = getIntParam(MERGE_THREADS_KEY, DEFAULT_MERGE_THREADS);
+			forceMergeSegments = getIntParam(FORCE_MERGE_SEGMENTS_KEY, DEFAULT_FORCE_MERGE_SEGMENTS);
+			String workerAddresses = optionalParams.get(WORKERS_KEY);
+			if (workerAddresses != null && !workerAddresses.isEmpty()) {
+				for (String address : workerAddresses.split(",")) {
+					// Each worker address is "host:port".
+					int portIdx = address.lastIndexOf(':');
+					workers.add(InetSocketAddress.createUnresolved(address.substring(0, portIdx).trim(), 
+							Integer.parseInt(address.substring(portIdx + 1).trim())));
+				}
+			}
+			
+			for (Map.Entry<String, String> param : optionalParams.entrySet()) {
+				String paramKey = param.getKey();
+				if (paramKey.startsWith(FIELD_INDEX_OPTIONS_KEY_PREFIX)) {
+					fieldIndexOptions.put(paramKey.substring(FIELD_INDEX_OPTIONS_KEY_PREFIX.length()), IndexOptions.valueOf(param.getValue()));
+				} else if (paramKey.startsWith(FIELD_OMIT_NORMS_KEY_PREFIX)) {
+					fieldOmitNorms.put(paramKey.substring(FIELD_OMIT_NORMS_KEY_PREFIX.length()), Boolean.parseBoolean(param.getValue()));
+				} else if (paramKey.startsWith(FIELD_BOOST_KEY_PREFIX)) {
+					fieldBoosts.put(paramKey.substring(FIELD_BOOST_KEY_PREFIX.length()), Float.parseFloat(param.getValue()));
+				}
+			}
+			
+			boolean optionalParamsValid = parseThreads > 0 && indexThreads > 0 && ingestQueueDepth > 0 && searchThreads > 0
+					&& serverPort >= 0 && serverPort <= 0xFFFF && refreshDelayMillis > 0 && shards > 0
+					&& slices > 0 && slice >= 0 && slice < slices && workerPort >= 0 && workerPort <= 0xFFFF && workerTimeoutMillis > 0
+					&& queryCacheSize >= 0 && resultCacheSize >= 0 && hits > 0 && pageSize > 0
+					&& queryTimeoutMillis >= 0 && batchTimeoutMillis >= 0
+					&& ramBufferSizeMB > 0 && MERGE_POLICIES.contains(mergePolicy) && mergeThreads >= 0 && forceMergeSegments >= 0
+					&& fieldBoosts.values().stream().allMatch(boost -> boost > 0 && !boost.isInfinite());
+			
+			if (this.docsFileName != null && this.fileName != null && this.outputFileName != null && this.queryFileName != null && this.retrievalAlgorithm != null
+					&& optionalParamsValid) {
 				retval = true;
 			}
 			
@@ -112,5 +515,33 @@ public class InputParams {
 		this.docsFileName = parser.docsFileName;
 		this.outputFileName = parser.outputFileName;
 		this.retrievalAlgorithm = parser.retrievalAlgorithm;
+		this.parseThreads = parser.parseThreads;
+		this.indexThreads = parser.indexThreads;
+		this.ingestQueueDepth = parser.ingestQueueDepth;
+		this.indexDir = parser.indexDir;
+		this.searchThreads = parser.searchThreads;
+		this.schemaProfile = parser.schemaProfile;
+		this.serverPort = parser.serverPort;
+		this.refreshDelayMillis = parser.refreshDelayMillis;
+		this.shards = parser.shards;
+		this.slice = parser.slice;
+		this.slices = parser.slices;
+		this.workerPort = parser.workerPort;
+		this.workers = parser.workers;
+		this.workerTimeoutMillis = parser.workerTimeoutMillis;
+		this.sharedScan = parser.sharedScan;
+		this.queryCacheSize = parser.queryCacheSize;
+		this.resultCacheSize = parser.resultCacheSize;
+		this.hits = parser.hits;
+		this.pageSize = parser.pageSize;
+		this.queryTimeoutMillis = parser.queryTimeoutMillis;
+		this.batchTimeoutMillis = parser.batchTimeoutMillis;
+		this.ramBufferSizeMB = parser.ramBufferSizeMB;
+		this.mergePolicy = parser.mergePolicy;
+		this.mergeThreads = parser.mergeThreads;
+		this.forceMergeSegments = parser.forceMergeSegments;
+		this.fieldIndexOptions = parser.fieldIndexOptions;
+		this.fieldOmitNorms = parser.fieldOmitNorms;
+		this.fieldBoosts = parser.fieldBoosts;
 	}
 }
@@ -0,0 +1,174 @@
+package ir.websearch.algo.helper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Incremental reader of CACM style files (documents and queries).
+ * The reader pulls one record at a time from a buffered character stream, where each record starts at a
+ * record prefix (e.g. ".I"). Only the record currently being assembled is held in memory, so the file size
+ * is bounded by the disk and not by the heap.
+ * Text preceding the first record prefix is returned as a record of its own only if it is not blank.
+ */
+public class RecordReader implements Iterator<String>, Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final char prefixFirst;
+	private final char prefixSecond;
+	private final StringBuilder record = new StringBuilder();
+	private int bufferPos = 0;
+	private int bufferLimit = 0;
+	private boolean eof = false;
+	private boolean firstRecord = true;
+	private boolean afterPrefixFirst = false;
+	private String next = null;
+
+	/**
+	 * Creates a record reader over the given file.
+	 * A gzip or zstd compressed file is decompressed on the fly, ahead of the reader (see {@link CompressedInput}).
+	 * @param file the file to read (decoded using the platform default charset).
+	 * @param recordPrefix a two characters prefix marking the beginning of each record.
+	 * @throws IOException if the file can not be opened.
+	 */
+	public RecordReader(File file, String recordPrefix) throws IOException {
+		this(new InputStreamReader(CompressedInput.open(file), Charset.defaultCharset()), recordPrefix);
+	}
+
+	/**
+	 * Creates a record reader over the given character stream.
+	 * @param reader the character stream to read.
+	 * @param recordPrefix a two characters prefix marking the beginning of each record.
+	 */
+	public RecordReader(Reader reader, String recordPrefix) {
+		if (recordPrefix == null || recordPrefix.length() != 2) {
+			throw new IllegalArgumentException("Record prefix must be two characters long: " + recordPrefix);
+		}
+
+		this.reader = (reader instanceof BufferedReader) ? reader : new BufferedReader(reader, BUFFER_SIZE);
+		this.prefixFirst = recordPrefix.charAt(0);
+		this.prefixSecond = recordPrefix.charAt(1);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = readRecord();
+			} catch (IOException e) {
+				close();
+				throw new UncheckedIOException(e);
+			}
+
+			if (next == null) {
+				close();
+			}
+		}
+
+		return next != null;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		String record = next;
+		next = null;
+		return record;
+	}
+
+	@Override
+	public void close() {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The method reads the next record from the stream.
+	 * The returned record starts with the record prefix (except for a leading non blank preamble).
+	 * @return the next record; null if the stream is exhausted.
+	 * @throws IOException
+	 */
+	private String readRecord() throws IOException {
+		while (true) {
+			if (bufferPos == bufferLimit && !fill()) {
+				return (record.length() == 0) ? null : takeRecord();
+			}
+
+			char c = buffer[bufferPos++];
+			if (c == prefixSecond && afterPrefixFirst) {
+				// A record prefix was found. Whatever was accumulated before it is a complete record.
+				record.setLength(record.length() - 1);
+				String completed = takeRecord();
+				record.append(prefixFirst).append(prefixSecond);
+				afterPrefixFirst = false;
+				if (completed != null) {
+					return completed;
+				}
+
+				continue;
+			}
+
+			record.append(c);
+			afterPrefixFirst = (c == prefixFirst);
+		}
+	}
+
+	private String takeRecord() {
+		String completed = null;
+		if (firstRecord) {
+			// The preamble is a record only if it contains something other than whitespace.
+			firstRecord = false;
+			if (!isBlank(record)) {
+				completed = record.toString();
+			}
+		} else {
+			completed = record.toString();
+		}
+
+		record.setLength(0);
+		return completed;
+	}
+
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+
+		int read = reader.read(buffer, 0, buffer.length);
+		if (read < 0) {
+			eof = true;
+			return false;
+		}
+
+		bufferPos = 0;
+		bufferLimit = read;
+		return true;
+	}
+
+	private static boolean isBlank(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) > ' ') {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+}
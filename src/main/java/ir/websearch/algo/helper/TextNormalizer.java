@@ -0,0 +1,92 @@
+package ir.websearch.algo.helper;
+
+/**
+ * Single pass, character level normalization of the documents and queries text.
+ * <p>
+ * {@link #normalize(CharSequence, int, int, StringBuilder)} gives the same text as {@link StringUtils#whitespacesToSingleSpace(String)}
+ * followed by {@link StringUtils#removeRedundantChars(String, String)} of "[^-A-Za-z0-9\\s]", without the regular expressions
+ * and the intermediate strings: the text is trimmed (of the characters up to ' '), each run of whitespace characters
+ * (the \s class: space, tab, line feed, vertical tab, form feed and carriage return) becomes a single space, 
+ * and any other character but '-', letters and digits is removed. As the whitespace is collapsed before the characters 
+ * are removed, a removed character breaks a whitespace run (e.g., a control character between two spaces leaves both spaces).
+ * <p>
+ * {@link #parseFirstInt(CharSequence, int, int)} gives the same ID as parsing the first match of "\\d+".
+ */
+public class TextNormalizer {
+
+	/**
+	 * The method appends the normalized text of a range of characters.
+	 * @param text the raw text.
+	 * @param start the index of the first character of the range.
+	 * @param end the index following the last character of the range.
+	 * @param out the buffer to append the normalized text to.
+	 */
+	public static void normalize(CharSequence text, int start, int end, StringBuilder out) {
+		// Trim, like String.trim().
+		while (start < end && text.charAt(start) <= ' ') {
+			start++;
+		}
+
+		while (end > start && text.charAt(end - 1) <= ' ') {
+			end--;
+		}
+
+		boolean inWhitespace = false;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (isWhitespace(c)) {
+				if (!inWhitespace) {
+					out.append(' ');
+					inWhitespace = true;
+				}
+			} else {
+				inWhitespace = false;
+				if (isAllowed(c)) {
+					out.append(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The method parses the first run of decimal digits of a range of characters.
+	 * @param text the text.
+	 * @param start the index of the first character of the range.
+	 * @param end the index following the last character of the range.
+	 * @return the parsed number.
+	 * @throws NumberFormatException if there are no digits in the range, or the number is too large for an int.
+	 */
+	public static int parseFirstInt(CharSequence text, int start, int end) {
+		int i = start;
+		while (i < end && !isDigit(text.charAt(i))) {
+			i++;
+		}
+
+		if (i == end) {
+			throw new NumberFormatException("No digits in: " + text.subSequence(start, end));
+		}
+
+		long value = 0;
+		for (; i < end && isDigit(text.charAt(i)); i++) {
+			value = value * 10 + (text.charAt(i) - '0');
+			if (value > Integer.MAX_VALUE) {
+				throw new NumberFormatException("Too large a number in: " + text.subSequence(start, end));
+			}
+		}
+
+		return (int) value;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || (c >= '\t' && c <= '\r');
+	}
+
+	private static boolean isAllowed(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '-';
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+}
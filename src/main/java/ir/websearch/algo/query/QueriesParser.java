@@ -1,20 +1,43 @@
 package ir.websearch.algo.query;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
-
-import org.apache.commons.io.FileUtils;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import ir.websearch.algo.query.Query.Builder;
-import ir.websearch.algo.helper.StringUtils;
+import ir.websearch.algo.helper.CollectionUtils;
+import ir.websearch.algo.helper.RecordReader;
+import ir.websearch.algo.helper.TextNormalizer;
 
-public class QueriesParser {
+/**
+ * Parser of CACM style query files.
+ * Queries are read incrementally, one record at a time, either through {@link #iterator()} / {@link #stream()}
+ * or loaded all at once through {@link #parse()}.
+ * A query record may set the amount of documents to retrieve for the query by a ".K" field ahead of its text,
+ * e.g. ".I 1\n.K 1000\n.W\n...". A query with no ".K" field retrieves the amount of the run.
+ * The file may be gzip or zstd compressed, it is then decompressed while it is read (see {@link RecordReader#RecordReader(File, String)}).
+ */
+public class QueriesParser implements Iterable<Query> {
 	
-	private static final String QUERY_SEPERATOR = new String(new char[] { 127 });
 	private static final String QUERY_PREFIX = ".I";
 	private static final String TEXT_PREFIX = ".W";
-	private static final String REMOVE_CHARS_REGEX = "[^-A-Za-z0-9\\s]";
+	private static final String K_PREFIX = ".K";
+	/**
+	 * Splits the record into its ID and text parts. Matches any character followed by 'W', like the former {@code split(".W")}.
+	 */
+	private static final Pattern TEXT_PREFIX_PATTERN = Pattern.compile(TEXT_PREFIX);
+	/**
+	 * The normalized text of the query being parsed, reused by the parsing thread.
+	 */
+	private static final ThreadLocal<StringBuilder> TEXT_BUFFERS = ThreadLocal.withInitial(StringBuilder::new);
 	
 	private final String queriesFile;
 	
@@ -22,28 +45,15 @@ public class QueriesParser {
 		this.queriesFile = queriesFile;
 	}
 	
+	/**
+	 * The method loads all the queries of the file into memory.
+	 * @return the collection of queries; null if the file could not be read or parsed.
+	 */
 	public Collection<Query> parse() {
 		Collection<Query> queries = new ArrayList<Query>();
-
-		File file = new File(queriesFile);
 		try {
-			String queriesJoin = FileUtils.readFileToString(file);
-			queriesJoin = queriesJoin.replace(QUERY_PREFIX, QUERY_SEPERATOR);
-			queriesJoin = queriesJoin.trim();
-			String[] rawQueries = queriesJoin.split("(?=" + QUERY_SEPERATOR + ")");
-			for (String doc : rawQueries) {
-				Query.Builder queryBuilder = new Builder();
-				String[] idTextSplit =  doc.split(TEXT_PREFIX);
-				String docIDPart = idTextSplit[0];
-				Integer docID = Integer.parseInt(StringUtils.findRegexFirstMatch("\\d+", docIDPart));
-				queryBuilder.id(docID);
-				
-				String textPart = idTextSplit[1];
-				textPart = StringUtils.whitespacesToSingleSpace(textPart);
-				textPart = StringUtils.removeRedundantChars(textPart, REMOVE_CHARS_REGEX);
-				queryBuilder.query(textPart);
-				
-				queries.add(queryBuilder.build());
+			for (Query query : this) {
+				queries.add(query);
 			}
 		} catch (Exception e) {
 			queries = null;
@@ -51,5 +61,89 @@ public class QueriesParser {
 		
 		return queries;
 	}
+	
+	/**
+	 * The method opens the queries file and returns an iterator pulling one query at a time.
+	 * The file is closed once the iterator is exhausted.
+	 * @throws UncheckedIOException if the file can not be read.
+	 */
+	@Override
+	public Iterator<Query> iterator() {
+		return CollectionUtils.map(records(), QueriesParser::parseQuery);
+	}
+	
+	/**
+	 * The method opens the queries file and returns a sequential stream of its queries.
+	 * The stream should be closed if it is not fully consumed.
+	 * @throws UncheckedIOException if the file can not be read.
+	 */
+	public Stream<Query> stream() {
+		RecordReader records = records();
+		Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(records::close).map(QueriesParser::parseQuery);
+	}
+	
+	/**
+	 * The method opens the queries file for reading raw (unparsed) query records.
+	 * @return a reader of raw query records.
+	 * @throws UncheckedIOException if the file can not be read.
+	 */
+	public RecordReader records() {
+		try {
+			return new RecordReader(new File(queriesFile), QUERY_PREFIX);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * The method parses a single raw query record.
+	 * @param record the query record (starting with the query prefix).
+	 * @return the parsed query.
+	 */
+	public static Query parseQuery(String record) {
+		String[] idTextSplit = TEXT_PREFIX_PATTERN.split(record);
+		String queryIDPart = idTextSplit[0];
+		int kIdx = queryIDPart.indexOf(K_PREFIX);
+		int idEnd = (kIdx < 0) ? queryIDPart.length() : kIdx;
+		Integer queryID = TextNormalizer.parseFirstInt(queryIDPart, 0, idEnd);
+		Integer k = (kIdx < 0) ? null : TextNormalizer.parseFirstInt(queryIDPart, kIdx, queryIDPart.length());
+		String textPart = idTextSplit[1];
+		return createQuery(queryID, k, textPart);
+	}
+	
+	/**
+	 * The method creates a query from raw query text, normalizing the text the same way as query file records.
+	 * @param queryID the query ID.
+	 * @param text the raw query text.
+	 * @return the query.
+	 */
+	public static Query createQuery(Integer queryID, String text) {
+		return createQuery(queryID, null, text);
+	}
+	
+	/**
+	 * The method creates a query from raw query text, normalizing the text the same way as query file records.
+	 * @param queryID the query ID.
+	 * @param k the amount of documents to retrieve for the query; null for the amount of the run.
+	 * @param text the raw query text.
+	 * @return the query.
+	 * @throws IllegalArgumentException if k is not positive.
+	 */
+	public static Query createQuery(Integer queryID, Integer k, String text) {
+		if (k != null && k <= 0) {
+			throw new IllegalArgumentException("The amount of documents to retrieve must be positive: " + k);
+		}
+		
+		Query.Builder queryBuilder = new Builder();
+		queryBuilder.id(queryID).k(k);
+		
+		StringBuilder textPart = TEXT_BUFFERS.get();
+		textPart.setLength(0);
+		TextNormalizer.normalize(text, 0, text.length(), textPart);
+		queryBuilder.query(textPart.toString());
+		
+		return queryBuilder.build();
+	}
 
 }
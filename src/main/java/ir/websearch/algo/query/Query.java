@@ -4,6 +4,7 @@ public class Query {
 
 	private final Integer id;
 	private final String query;
+	private final Integer k;
 
 	public Integer getId() {
 		return id;
@@ -13,9 +14,18 @@ public class Query {
 		return query;
 	}
 
+	/**
+	 * @param defaultK the amount of documents to retrieve for a query which does not set its own.
+	 * @return the amount of documents to retrieve for the query.
+	 */
+	public int getK(int defaultK) {
+		return (k != null) ? k : defaultK;
+	}
+
 	public static class Builder {
 		private Integer id;
 		private String query;
+		private Integer k;
 
 		public Builder id(Integer id) {
 			this.id = id;
@@ -27,6 +37,14 @@ public class Query {
 			return this;
 		}
 
+		/**
+		 * @param k the amount of documents to retrieve for the query; null for the amount of the run.
+		 */
+		public Builder k(Integer k) {
+			this.k = k;
+			return this;
+		}
+
 		public Query build() {
 			return new Query(this);
 		}
@@ -35,5 +53,6 @@ public class Query {
 	private Query(Builder builder) {
 		this.id = builder.id;
 		this.query = builder.query;
+		this.k = builder.k;
 	}
 }
@@ -0,0 +1,106 @@
+package ir.websearch.algo.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.InputParams;
+import ir.websearch.algo.query.QueriesParser;
+import ir.websearch.algo.query.Query;
+
+/**
+ * The rankings of the {@link MemoryAlgorithm} must equal those of the {@link BasicAlgorithm} over Lucene, on a small collection
+ * and queries of the operators, hyphenated terms and punctuation the query syntax handles.
+ */
+public class MemoryAlgorithmTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void rankingEqualsLucene() throws Exception {
+		assertSameRanking();
+	}
+
+	@Test
+	public void sharedScanRankingEqualsLucene() throws Exception {
+		assertSameRanking("sharedScan=true");
+	}
+
+	@Test
+	public void deepRankingEqualsLucene() throws Exception {
+		assertSameRanking("hits=500", "pageSize=64");
+	}
+
+	@Test
+	public void deepSharedScanRankingEqualsLucene() throws Exception {
+		assertSameRanking("hits=500", "sharedScan=true");
+	}
+
+	/**
+	 * The method searches the fixture queries by both algorithms, with the given extra parameters, and compares their results.
+	 */
+	private void assertSameRanking(String... extraParams) throws Exception {
+		List<String> expected = search(BasicAlgorithm.class, extraParams);
+		List<String> actual = search(MemoryAlgorithm.class, extraParams);
+		assertFalse("The fixture queries retrieved no documents.", expected.isEmpty());
+		assertEquals(expected, actual);
+	}
+
+	/**
+	 * @return the results of the fixture queries, as "query ID,document ID,rank" lines.
+	 */
+	private List<String> search(Class<? extends ISearchAlgorithm> algorithmClass, String... extraParams) throws Exception {
+		InputParams params = createParams(algorithmClass == MemoryAlgorithm.class ? "memory" : "basic", extraParams);
+		Collection<Query> queries = new QueriesParser(params.getQueryFileName()).parse();
+		DocumentsParser docsParser = new DocumentsParser(params.getDocsFileName());
+		ISearchAlgorithm algorithm = (algorithmClass == MemoryAlgorithm.class)
+				? new MemoryAlgorithm(docsParser, queries, params) : new BasicAlgorithm(docsParser, queries, params);
+		List<String> results = new ArrayList<>();
+		boolean searched = algorithm.search((queryId, docIds, count) -> {
+			for (int i = 0; i < count; i++) {
+				results.add(queryId + "," + docIds[i] + "," + (i + 1));
+			}
+		});
+
+		assertTrue("The search of the " + algorithmClass.getSimpleName() + " failed.", searched);
+		return results;
+	}
+
+	private InputParams createParams(String retrievalAlgorithm, String... extraParams) throws IOException, URISyntaxException {
+		List<String> lines = new ArrayList<>();
+		lines.add("queryFile=" + resource("queries.txt"));
+		lines.add("docsFile=" + resource("docs.txt"));
+		lines.add("outputFile=" + new File(folder.getRoot(), "output.txt").getPath());
+		lines.add("retrievalAlgorithm=" + retrievalAlgorithm);
+		lines.add("resultCacheSize=0");
+		lines.addAll(Arrays.asList(extraParams));
+		File paramsFile = folder.newFile();
+		Files.write(paramsFile.toPath(), lines, StandardCharsets.UTF_8);
+		InputParams params = new InputParams.Parser(paramsFile.getPath()).parse();
+		assertNotNull("Invalid test parameters.", params);
+		return params;
+	}
+
+	private static String resource(String name) throws URISyntaxException {
+		return Paths.get(MemoryAlgorithmTest.class.getResource(name).toURI()).toString();
+	}
+
+}
@@ -0,0 +1,145 @@
+package ir.websearch.algo.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ir.websearch.algo.doc.DocumentsParser;
+import ir.websearch.algo.helper.InputParams;
+import ir.websearch.algo.query.Query;
+
+/**
+ * A {@link ResultCache} must drop its results once the index is refreshed or the query compiler is replaced,
+ * and must not cache a result searched before such an invalidation.
+ */
+public class ResultCacheTest {
+
+	private static final String KEY = ResultCache.key("basic", 10, "network algol compiler memory");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void cachedResultIsCopied() {
+		ResultCache cache = new ResultCache(10);
+		int[] docIds = { 3, 1, 2 };
+		cache.put(KEY, docIds, cache.getGeneration());
+		docIds[0] = 7;
+		int[] cached = cache.get(KEY);
+		assertArrayEquals(new int[] { 3, 1, 2 }, cached);
+		cached[0] = 7;
+		assertArrayEquals(new int[] { 3, 1, 2 }, cache.get(KEY));
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		ResultCache cache = new ResultCache(2);
+		cache.put("a", new int[] { 1 }, cache.getGeneration());
+		cache.put("b", new int[] { 2 }, cache.getGeneration());
+		assertNotNull(cache.get("a"));
+		cache.put("c", new int[] { 3 }, cache.getGeneration());
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+	}
+
+	@Test
+	public void invalidateDropsEntries() {
+		ResultCache cache = new ResultCache(10);
+		cache.put(KEY, new int[] { 1, 2 }, cache.getGeneration());
+		cache.invalidate();
+		assertNull(cache.get(KEY));
+		StringBuilder stats = new StringBuilder();
+		cache.appendStats(stats);
+		assertEquals("{ \"capacity\": 10, \"hits\": 0, \"misses\": 1, \"hitRate\": 0.0000, \"invalidations\": 1, \"entries\": 0, "
+				+ "\"estimatedBytes\": 0 }", stats.toString());
+	}
+
+	@Test
+	public void searchStartedBeforeInvalidationIsNotCached() {
+		ResultCache cache = new ResultCache(10);
+		long searchGeneration = cache.getGeneration();
+		cache.invalidate();
+		cache.put(KEY, new int[] { 1, 2 }, searchGeneration);
+		assertNull(cache.get(KEY));
+		cache.put(KEY, new int[] { 1, 2 }, cache.getGeneration());
+		assertNotNull(cache.get(KEY));
+	}
+
+	@Test
+	public void refreshDropsCachedResults() throws Exception {
+		Query query = createQuery();
+		try (SearchSession session = openSession()) {
+			int[] docIds = session.search(query);
+			assertFalse("The query retrieved no documents.", docIds.length == 0);
+			assertArrayEquals(docIds, session.search(query));
+
+			session.getUpdater().waitForGeneration(session.getUpdater().deleteDocument(docIds[0]));
+			int[] refreshedIds = session.search(query);
+			assertEquals(Arrays.toString(refreshedIds), -1, indexOf(refreshedIds, docIds[0]));
+			assertArrayEquals(Arrays.copyOfRange(docIds, 1, docIds.length), Arrays.copyOf(refreshedIds, docIds.length - 1));
+		}
+	}
+
+	@Test
+	public void compilerSwapDropsCachedResults() throws Exception {
+		Query query = createQuery();
+		try (SearchSession session = openSession()) {
+			assertFalse("The query retrieved no documents.", session.search(query).length == 0);
+
+			session.setCollectionStopWords(new HashSet<>(Arrays.asList(query.getQuery().split(" "))));
+			assertEquals(0, session.search(query).length);
+
+			session.setCollectionStopWords(Collections.emptySet());
+			assertFalse(session.search(query).length == 0);
+		}
+	}
+
+	private static Query createQuery() {
+		return new Query.Builder().id(1).query("network algol compiler memory").build();
+	}
+
+	private SearchSession openSession() throws Exception {
+		File paramsFile = folder.newFile();
+		Files.write(paramsFile.toPath(), Arrays.asList(
+				"queryFile=" + resource("queries.txt"),
+				"docsFile=" + resource("docs.txt"),
+				"outputFile=" + new File(folder.getRoot(), "output.txt").getPath(),
+				"retrievalAlgorithm=basic",
+				"hits=10",
+				"resultCacheSize=10"), StandardCharsets.UTF_8);
+		InputParams params = new InputParams.Parser(paramsFile.getPath()).parse();
+		assertNotNull("Invalid test parameters.", params);
+		BasicAlgorithm algorithm = new BasicAlgorithm(new DocumentsParser(params.getDocsFileName()), Collections.emptyList(), params);
+		return algorithm.openSession(true);
+	}
+
+	private static int indexOf(int[] values, int value) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == value) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static String resource(String name) throws Exception {
+		return Paths.get(ResultCacheTest.class.getResource(name).toURI()).toString();
+	}
+
+}
@@ -0,0 +1,155 @@
+package ir.websearch.algo.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Plain, gzip and zstd copies of the documents fixture must be read as the same records,
+ * and a truncated compressed file must fail the reader rather than end it silently or block it.
+ */
+public class CompressedInputTest {
+
+	private static final String DOCS_RESOURCE = "/ir/websearch/algo/core/docs.txt";
+	private static final String DOC_PREFIX = ".I";
+	// Enough copies of the fixture to fill more chunks than are read ahead.
+	private static final int FIXTURE_COPIES = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private byte[] contents;
+	private List<String> expected;
+
+	@Before
+	public void setUp() throws Exception {
+		byte[] fixture = Files.readAllBytes(Paths.get(CompressedInputTest.class.getResource(DOCS_RESOURCE).toURI()));
+		ByteArrayOutputStream copies = new ByteArrayOutputStream();
+		for (int i = 0; i < FIXTURE_COPIES; i++) {
+			copies.write(fixture);
+		}
+
+		contents = copies.toByteArray();
+		expected = readRecords(write("docs.txt", contents));
+		assertTrue("The fixture has no records.", expected.size() > FIXTURE_COPIES);
+	}
+
+	@Test(timeout = 10000)
+	public void gzipRecordsEqualPlain() throws IOException {
+		assertEquals(expected, readRecords(write("docs.txt.gz", gzip(contents))));
+	}
+
+	@Test(timeout = 10000)
+	public void zstdRecordsEqualPlain() throws IOException {
+		assertEquals(expected, readRecords(write("docs.txt.zst", zstd(contents))));
+	}
+
+	@Test(timeout = 10000)
+	public void compressionIsDetectedByContents() throws IOException {
+		assertEquals(expected, readRecords(write("docs-gzip.txt", gzip(contents))));
+		assertEquals(expected, readRecords(write("docs-zstd.txt", zstd(contents))));
+	}
+
+	@Test(timeout = 10000)
+	public void truncatedGzipFails() throws IOException {
+		byte[] compressed = gzip(contents);
+		File file = write("truncated.txt.gz", Arrays.copyOf(compressed, compressed.length / 2));
+		assertReadFails(file);
+		assertRecordsFail(file);
+	}
+
+	@Test(timeout = 10000)
+	public void truncatedZstdFails() throws IOException {
+		byte[] compressed = zstd(contents);
+		File file = write("truncated.txt.zst", Arrays.copyOf(compressed, compressed.length / 2));
+		assertReadFails(file);
+		assertRecordsFail(file);
+	}
+
+	@Test(timeout = 10000)
+	public void closeBeforeEndStopsReading() throws IOException {
+		File file = write("docs.txt.gz", gzip(contents));
+		try (InputStream in = CompressedInput.open(file)) {
+			assertTrue(in.read() >= 0);
+		}
+	}
+
+	private static void assertReadFails(File file) {
+		byte[] buffer = new byte[8192];
+		try (InputStream in = CompressedInput.open(file)) {
+			while (in.read(buffer, 0, buffer.length) >= 0) {
+				// Drain the stream up to its failure.
+			}
+
+			fail("A truncated file was read to its end: " + file.getName());
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private static void assertRecordsFail(File file) throws IOException {
+		try (RecordReader reader = new RecordReader(file, DOC_PREFIX)) {
+			while (reader.hasNext()) {
+				reader.next();
+			}
+
+			fail("A truncated file was read to its end: " + file.getName());
+		} catch (UncheckedIOException e) {
+			// Expected.
+		}
+	}
+
+	private static List<String> readRecords(File file) throws IOException {
+		List<String> records = new ArrayList<>();
+		try (RecordReader reader = new RecordReader(file, DOC_PREFIX)) {
+			reader.forEachRemaining(records::add);
+		}
+
+		return records;
+	}
+
+	private File write(String name, byte[] data) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		Files.write(file.toPath(), data);
+		return file;
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(compressed)) {
+			out.write(data);
+		}
+
+		return compressed.toByteArray();
+	}
+
+	private static byte[] zstd(byte[] data) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream out = new ZstdOutputStream(compressed)) {
+			out.write(data);
+		}
+
+		return compressed.toByteArray();
+	}
+
+}
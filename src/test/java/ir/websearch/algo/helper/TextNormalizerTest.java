@@ -0,0 +1,121 @@
+package ir.websearch.algo.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The {@link TextNormalizer} must give the same text and IDs as the regular expressions chain it replaces
+ * ({@link StringUtils#whitespacesToSingleSpace(String)}, {@link StringUtils#removeRedundantChars(String, String)} and
+ * {@link StringUtils#findRegexFirstMatch(String, String)}).
+ */
+public class TextNormalizerTest {
+
+	private static final String REMOVE_CHARS_REGEX = "[^-A-Za-z0-9\\s]";
+	private static final String EDGE_CHARS = " \t\n\u000B\f\r\u0001\u001F\u00A0\u2003-.,;:!?\"'()aZ09\u00E9";
+
+	private static final String[] EDGE_TEXTS = {
+		"",
+		" ",
+		"\t\n\r",
+		"word",
+		"  leading and trailing  ",
+		"\t\ttabs\tand\nnew\r\nlines\n",
+		"punctuation, runs!!! ... ?? ;: and (parentheses)",
+		"a . b",
+		"x-ray real-time -- - e-mail",
+		"control\u0001between  \u0002  spaces",
+		"\u0001 leading control",
+		"trailing control \u0001",
+		"vertical\u000Btab and form\ffeed",
+		"non\u00A0breaking\u2003spaces",
+		"accents \u00E9\u00E0\u00FC and digits 7090 3-d",
+		"...",
+		"- -",
+	};
+
+	@Test
+	public void normalizeEqualsRegexChain() {
+		for (String text : EDGE_TEXTS) {
+			assertNormalized(text);
+		}
+	}
+
+	@Test
+	public void normalizeEqualsRegexChainOnRandomTexts() {
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			char[] chars = new char[random.nextInt(16)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = EDGE_CHARS.charAt(random.nextInt(EDGE_CHARS.length()));
+			}
+
+			assertNormalized(new String(chars));
+		}
+	}
+
+	@Test
+	public void normalizeRangeAppends() {
+		StringBuilder out = new StringBuilder("prefix:");
+		String text = "skipped  Some,\ttext!  skipped";
+		TextNormalizer.normalize(text, 7, 21, out);
+		assertEquals("prefix:" + regexChain(text.substring(7, 21)), out.toString());
+	}
+
+	@Test
+	public void parseFirstIntEqualsFirstMatch() {
+		String[] ids = { "1", ".I 1", " .I 42\n", "\t\n007 8", "id-12-13", ".I 2147483647", "abc123def456" };
+		for (String id : ids) {
+			assertEquals(id, Integer.parseInt(StringUtils.findRegexFirstMatch("\\d+", id)), TextNormalizer.parseFirstInt(id, 0, id.length()));
+		}
+	}
+
+	@Test
+	public void parseFirstIntOfRange() {
+		String record = ".I 12\n.K 500\n";
+		int kIdx = record.indexOf(".K");
+		assertEquals(12, TextNormalizer.parseFirstInt(record, 0, kIdx));
+		assertEquals(500, TextNormalizer.parseFirstInt(record, kIdx, record.length()));
+	}
+
+	@Test
+	public void parseFirstIntFailsLikeFirstMatch() {
+		String[] ids = { "", " ", ".I\n", "no digits", ".I 2147483648" };
+		for (String id : ids) {
+			assertFailsToParse(id, () -> Integer.parseInt(StringUtils.findRegexFirstMatch("\\d+", id)));
+			assertFailsToParse(id, () -> TextNormalizer.parseFirstInt(id, 0, id.length()));
+		}
+	}
+
+	private static void assertNormalized(String text) {
+		StringBuilder out = new StringBuilder();
+		TextNormalizer.normalize(text, 0, text.length(), out);
+		assertEquals(escape(text), regexChain(text), out.toString());
+	}
+
+	private static String regexChain(String text) {
+		return StringUtils.removeRedundantChars(StringUtils.whitespacesToSingleSpace(text), REMOVE_CHARS_REGEX);
+	}
+
+	private static void assertFailsToParse(String id, Runnable parse) {
+		try {
+			parse.run();
+			fail("Parsed an ID of: " + escape(id));
+		} catch (NumberFormatException e) {
+			// Expected.
+		}
+	}
+
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder();
+		for (char c : text.toCharArray()) {
+			escaped.append((c < ' ' || c > '~') ? String.format("\\u%04X", (int) c) : String.valueOf(c));
+		}
+
+		return escaped.toString();
+	}
+
+}